@@ -0,0 +1,226 @@
+package org.charry.lib.database_utility;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rows of a multi-row insert, executed by DatabaseFactory.executeBatchInsert().
+ *
+ * The values are bound as parameters instead of being inlined into the SQL, and
+ * the rows are split into chunks, each chunk is one INSERT ... VALUES (?, ?),
+ * (?, ?) statement, so a large batch never exceeds the max packet size of the
+ * server (max_allowed_packet of MySQL). A chunk is closed when either the row
+ * budget or the byte budget is reached.
+ *
+ * <pre>
+ * BatchInsert batch = new BatchInsert(&quot;test3&quot;, &quot;V1&quot;, &quot;V2&quot;, &quot;V3&quot;);
+ * batch.addRow(&quot;hello&quot;, &quot;ss&quot;, 833).addRow(&quot;world&quot;, null, 834);
+ * int[] rowCounts = DatabaseFactory.getInstance(DB_ALIAS).executeBatchInsert(batch);
+ * </pre>
+ *
+ * Not thread-safe.
+ *
+ * @author charry
+ *
+ */
+public final class BatchInsert {
+	// max number of placeholders of one statement, limited by MySQL and others
+	private static final int MAX_PARAMETERS = 65535;
+	private final String targetTable;
+	private final String[] fieldNames;
+	private final List<Object[]> rowList = new ArrayList<Object[]>();
+	private int maxChunkRows = 1000;
+	private int maxChunkBytes = 1024 * 1024;
+
+	/**
+	 * @param targetTable
+	 *            table name
+	 * @param fieldNames
+	 *            column names, the values of each row are in this order
+	 */
+	public BatchInsert(final String targetTable, final String... fieldNames) {
+		if (fieldNames == null || fieldNames.length == 0)
+			throw new IllegalArgumentException("no field of batch insert:" + targetTable);
+
+		this.targetTable = targetTable;
+		this.fieldNames = fieldNames.clone();
+	}
+
+	/**
+	 * Add one row.
+	 *
+	 * @param values
+	 *            values in the order of the field names, null for NULL
+	 * @return this
+	 */
+	public BatchInsert addRow(final Object... values) {
+		if (values == null || values.length != fieldNames.length)
+			throw new IllegalArgumentException("expect " + fieldNames.length + " values, table:" + targetTable);
+
+		rowList.add(values.clone());
+
+		return this;
+	}
+
+	/**
+	 * Remove all rows, the settings are kept.
+	 *
+	 * @return this
+	 */
+	public BatchInsert clear() {
+		rowList.clear();
+
+		return this;
+	}
+
+	public String[] getFieldNames() {
+		return fieldNames.clone();
+	}
+
+	public int getMaxChunkBytes() {
+		return maxChunkBytes;
+	}
+
+	public int getMaxChunkRows() {
+		return maxChunkRows;
+	}
+
+	public int getRowCount() {
+		return rowList.size();
+	}
+
+	public String getTargetTable() {
+		return targetTable;
+	}
+
+	/**
+	 * @param maxChunkBytes
+	 *            max estimated size of the values of one chunk, keep it below
+	 *            the max packet size of the server, default 1MB
+	 * @return this
+	 */
+	public BatchInsert setMaxChunkBytes(int maxChunkBytes) {
+		this.maxChunkBytes = maxChunkBytes;
+
+		return this;
+	}
+
+	/**
+	 * @param maxChunkRows
+	 *            max rows of one chunk, default 1000
+	 * @return this
+	 */
+	public BatchInsert setMaxChunkRows(int maxChunkRows) {
+		this.maxChunkRows = maxChunkRows;
+
+		return this;
+	}
+
+	/**
+	 * Split the rows into chunks.
+	 *
+	 * @return row count of each chunk, in order
+	 */
+	List<Integer> splitChunks() {
+		List<Integer> chunkList = new ArrayList<Integer>();
+
+		for (int fromRow = 0; fromRow < rowList.size();) {
+			int rows = getChunkRows(fromRow, Integer.MAX_VALUE);
+			chunkList.add(rows);
+			fromRow += rows;
+		}
+
+		return chunkList;
+	}
+
+	/**
+	 * Get the row count of the chunk starting at a row, it's limited by the
+	 * max chunk rows, the max chunk bytes and the max parameters.
+	 *
+	 * @param maxRows
+	 *            further limit of the rows, e.g. the adaptive batch size
+	 * @return 0 if there are no more rows
+	 */
+	int getChunkRows(int fromRow, int maxRows) {
+		int limit = Math.max(1, Math.min(Math.min(maxRows, maxChunkRows), MAX_PARAMETERS / fieldNames.length));
+
+		int rows = 0;
+		long bytes = 0;
+		for (int i = fromRow; i < rowList.size() && rows < limit; i++) {
+			long rowBytes = estimateBytes(rowList.get(i));
+
+			// a row larger than the budget still makes a chunk on its own
+			if (rows > 0 && bytes + rowBytes > maxChunkBytes)
+				break;
+
+			rows++;
+			bytes += rowBytes;
+		}
+
+		return rows;
+	}
+
+	/**
+	 * Get the values of the rows as one parameter array.
+	 */
+	Object[] getParameters(int fromRow, int rows) {
+		Object[] params = new Object[rows * fieldNames.length];
+
+		for (int i = 0; i < rows; i++) {
+			System.arraycopy(rowList.get(fromRow + i), 0, params, i * fieldNames.length, fieldNames.length);
+		}
+
+		return params;
+	}
+
+	/**
+	 * Generate the parameterized SQL of a chunk.
+	 */
+	String getChunkSql(int rows) {
+		StringBuilder sql = new StringBuilder(32 + targetTable.length() + fieldNames.length * (16 + rows * 3));
+		sql.append("INSERT INTO ").append(targetTable).append("(");
+
+		for (int i = 0; i < fieldNames.length; i++) {
+			if (i > 0)
+				sql.append(", ");
+			sql.append(fieldNames[i]);
+		}
+
+		sql.append(") VALUES");
+
+		for (int i = 0; i < rows; i++) {
+			sql.append(i > 0 ? ", (" : " (");
+			for (int j = 0; j < fieldNames.length; j++) {
+				sql.append(j > 0 ? ", ?" : "?");
+			}
+			sql.append(")");
+		}
+
+		return sql.toString();
+	}
+
+	/**
+	 * Estimate the size of one row in the packet, strings are counted as
+	 * UTF-8 at most 3 bytes per char.
+	 */
+	private static long estimateBytes(Object[] row) {
+		long bytes = 3; // "(", ")" and ","
+
+		for (int i = 0; i < row.length; i++) {
+			Object value = row[i];
+
+			if (value == null)
+				bytes += 4;
+			else if (value instanceof CharSequence)
+				bytes += ((CharSequence) value).length() * 3L + 2;
+			else if (value instanceof byte[])
+				bytes += ((byte[]) value).length * 2L + 3;
+			else
+				bytes += 24;
+
+			bytes += 2; // separator
+		}
+
+		return bytes;
+	}
+}
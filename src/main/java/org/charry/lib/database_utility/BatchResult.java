@@ -0,0 +1,107 @@
+package org.charry.lib.database_utility;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Result of DatabaseFactory.executeUpdateBatch() in chunks.
+ *
+ * The statements are executed chunk by chunk and committed every few chunks,
+ * if a chunk fails, the chunks since the last commit are rolled back, all of
+ * them are reported as failed and the update counts of their statements are
+ * Statement.EXECUTE_FAILED. The chunks may differ in size if the batch size is
+ * adaptive.
+ *
+ * @author charry
+ *
+ */
+public final class BatchResult {
+	private final int[] updateCounts;
+	// index of the first statement of each chunk
+	private final List<Integer> chunkStartList = new ArrayList<Integer>();
+	private final List<Integer> failedChunkList = new ArrayList<Integer>();
+	private int chunkedCount = 0;
+	private int batchSize = 0;
+
+	BatchResult(int statementCount) {
+		this.updateCounts = new int[statementCount];
+
+		Arrays.fill(updateCounts, Statement.EXECUTE_FAILED);
+	}
+
+	/**
+	 * Append a chunk after the previous ones.
+	 *
+	 * @param statements
+	 *            statements of the chunk
+	 * @return index of the chunk
+	 */
+	int addChunk(int statements) {
+		chunkStartList.add(chunkedCount);
+		chunkedCount += statements;
+		batchSize = Math.max(batchSize, statements);
+
+		return chunkStartList.size() - 1;
+	}
+
+	/**
+	 * @return statements of the largest chunk
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public int getChunkCount() {
+		return chunkStartList.size();
+	}
+
+	/**
+	 * @return statements in the chunks added so far
+	 */
+	int getChunkedCount() {
+		return chunkedCount;
+	}
+
+	/**
+	 * @return indices of the failed chunks, in ascending order
+	 */
+	public List<Integer> getFailedChunks() {
+		return new ArrayList<Integer>(failedChunkList);
+	}
+
+	/**
+	 * @return update count of each statement, in the order of the SQL list
+	 */
+	public int[] getUpdateCounts() {
+		return updateCounts.clone();
+	}
+
+	/**
+	 * @return true if all chunks are committed
+	 */
+	public boolean isSuccess() {
+		return failedChunkList.isEmpty();
+	}
+
+	/**
+	 * Mark the chunks as failed, their update counts are discarded.
+	 */
+	void fail(int fromChunk, int toChunk) {
+		for (int chunk = fromChunk; chunk <= toChunk && chunk < chunkStartList.size(); chunk++) {
+			int from = chunkStartList.get(chunk);
+			int to = chunk + 1 < chunkStartList.size() ? chunkStartList.get(chunk + 1) : chunkedCount;
+
+			Arrays.fill(updateCounts, from, to, Statement.EXECUTE_FAILED);
+			failedChunkList.add(chunk);
+		}
+	}
+
+	void setUpdateCounts(int chunk, int[] counts) {
+		int from = chunkStartList.get(chunk);
+		int length = Math.min(counts.length, updateCounts.length - from);
+
+		System.arraycopy(counts, 0, updateCounts, from, length);
+	}
+}
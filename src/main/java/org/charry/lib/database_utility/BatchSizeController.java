@@ -0,0 +1,130 @@
+package org.charry.lib.database_utility;
+
+/**
+ * Batch size of one table adjusted by the observed latency of the batches,
+ * see DatabaseConfig.setAdaptiveBatchConfig().
+ *
+ * The size grows by a fixed step after each batch which finishes within the
+ * target latency, and is halved after a slow or failed one (AIMD), so it
+ * settles near the largest size the database absorbs without lock waits or
+ * oversized packets, and backs off quickly when the load changes.
+ *
+ * @author charry
+ *
+ */
+public final class BatchSizeController {
+	// weight of the latest batch in the averages
+	private static final double ALPHA = 0.2;
+	private final int minSize;
+	private final int maxSize;
+	private final long targetLatency; // in milliseconds
+	private final int step;
+	private int batchSize;
+	private double averageLatency = 0; // in milliseconds
+	private double averageThroughput = 0; // rows per second
+	private long batchCount = 0;
+	private long increaseCount = 0;
+	private long decreaseCount = 0;
+
+	/**
+	 * @param minSize
+	 *            min rows of a batch, it's the initial size
+	 * @param maxSize
+	 *            max rows of a batch
+	 * @param targetLatency
+	 *            max time of a batch, including its commit, unit: millisecond
+	 */
+	public BatchSizeController(int minSize, int maxSize, long targetLatency) {
+		this.minSize = Math.max(1, minSize);
+		this.maxSize = Math.max(this.minSize, maxSize);
+		this.targetLatency = Math.max(1, targetLatency);
+		// reaches the max size after about 20 fast batches
+		this.step = Math.max(1, (this.maxSize - this.minSize) / 20);
+		this.batchSize = this.minSize;
+	}
+
+	/**
+	 * @return average time of a batch, unit: millisecond
+	 */
+	public synchronized double getAverageLatency() {
+		return averageLatency;
+	}
+
+	/**
+	 * @return average rows written per second by a batch
+	 */
+	public synchronized double getAverageThroughput() {
+		return averageThroughput;
+	}
+
+	public synchronized long getBatchCount() {
+		return batchCount;
+	}
+
+	/**
+	 * @return rows of the next batch
+	 */
+	public synchronized int getBatchSize() {
+		return batchSize;
+	}
+
+	public synchronized long getDecreaseCount() {
+		return decreaseCount;
+	}
+
+	public synchronized long getIncreaseCount() {
+		return increaseCount;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public int getMinSize() {
+		return minSize;
+	}
+
+	public long getTargetLatency() {
+		return targetLatency;
+	}
+
+	/**
+	 * Record a finished batch and adjust the size.
+	 *
+	 * @param rows
+	 *            rows of the batch
+	 * @param elapsed
+	 *            time of the batch, unit: millisecond
+	 * @param bFailed
+	 *            true if the batch failed
+	 */
+	public synchronized void record(int rows, long elapsed, boolean bFailed) {
+		double throughput = rows * 1000.0 / Math.max(1, elapsed);
+
+		if (batchCount == 0) {
+			averageLatency = elapsed;
+			averageThroughput = throughput;
+		} else {
+			averageLatency += ALPHA * (elapsed - averageLatency);
+			averageThroughput += ALPHA * (throughput - averageThroughput);
+		}
+		batchCount++;
+
+		if (bFailed || elapsed > targetLatency) {
+			if (batchSize > minSize) {
+				batchSize = Math.max(minSize, batchSize / 2);
+				decreaseCount++;
+			}
+		} else if (rows >= batchSize && batchSize < maxSize) {
+			// only a full batch proves the size is sustainable
+			batchSize = Math.min(maxSize, batchSize + step);
+			increaseCount++;
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("size:%d, latency:%.1fms, throughput:%.1f rows/s, batches:%d, increases:%d, decreases:%d",
+				batchSize, averageLatency, averageThroughput, batchCount, increaseCount, decreaseCount);
+	}
+}
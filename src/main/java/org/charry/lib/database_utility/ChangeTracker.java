@@ -0,0 +1,90 @@
+package org.charry.lib.database_utility;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Original column values of the objects loaded in change-tracking mode, see
+ * ResultSetEx.toList(clazz, true).
+ *
+ * The objects are held by weak references and compared by identity, so an
+ * entity which overrides equals()/hashCode() is still tracked correctly, and
+ * the snapshot goes away with the entity.
+ *
+ * The map is concurrent, so the updates of unrelated objects don't serialize
+ * on a global lock, and it isn't looked up at all until the first object is
+ * tracked.
+ *
+ * @author charry
+ *
+ */
+final class ChangeTracker {
+	private static final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+	private static final Map<IdentityKey, Object[]> snapshotMap = new ConcurrentHashMap<IdentityKey, Object[]>();
+	private static volatile boolean bUsed = false;
+
+	private ChangeTracker() {
+	}
+
+	/**
+	 * @return the original values, null if the object isn't tracked
+	 */
+	static Object[] getSnapshot(Object object) {
+		if (!bUsed)
+			return null;
+
+		expunge();
+
+		return snapshotMap.get(new IdentityKey(object, null));
+	}
+
+	static boolean isTracked(Object object) {
+		return getSnapshot(object) != null;
+	}
+
+	/**
+	 * Remember the values of an object, the old ones are replaced.
+	 */
+	static void track(Object object, Object[] values) {
+		bUsed = true;
+		expunge();
+
+		snapshotMap.put(new IdentityKey(object, queue), values);
+	}
+
+	private static void expunge() {
+		Reference<? extends Object> ref;
+		while ((ref = queue.poll()) != null) {
+			snapshotMap.remove(ref);
+		}
+	}
+
+	private static final class IdentityKey extends WeakReference<Object> {
+		private final int hash;
+
+		IdentityKey(Object object, ReferenceQueue<Object> queue) {
+			super(object, queue);
+			this.hash = System.identityHashCode(object);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+
+			if (!(obj instanceof IdentityKey))
+				return false;
+
+			Object referent = get();
+			return referent != null && referent == ((IdentityKey) obj).get();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
@@ -0,0 +1,481 @@
+package org.charry.lib.database_utility;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.charry.lib.database_utility.util.SleepManager;
+import org.charry.lib.database_utility.util.StackUtil;
+
+/**
+ * A bounded JDBC connection pool, one pool per database alias.
+ *
+ * Idle connections are kept in LIFO order so that the hot ones are reused and
+ * the cold ones age out. Expired connections (idle timeout or max lifetime)
+ * are evicted lazily when the pool is touched, no background thread is needed.
+ *
+ * If a new connection can't be opened, the pool is marked as unreachable and a
+ * background thread reconnects with increased interval, meanwhile borrow()
+ * fails fast with DatabaseUnavailableException instead of blocking the caller.
+ *
+ * @author charry
+ *
+ */
+public final class ConnectionPool {
+	private static Log log = LogFactory.getLog(ConnectionPool.class);
+	private final DatabaseConfig config;
+	private final long idleTimeout; // in milliseconds
+	private final LinkedList<PooledConnection> idleList = new LinkedList<PooledConnection>();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition available = lock.newCondition();
+	private int totalCount = 0;
+	private boolean closed = false;
+	private volatile boolean reachable = true;
+	private Thread reconnector = null;
+
+	/**
+	 * Create a pool based on configuration, no connection is opened until
+	 * fill() or borrow() is called.
+	 *
+	 * @param config
+	 *            database configuration
+	 * @param defaultIdleTimeout
+	 *            used if the idle timeout isn't configured, unit: second
+	 */
+	public ConnectionPool(final DatabaseConfig config, int defaultIdleTimeout) {
+		this.config = config;
+
+		int timeout = config.getIdleTimeout() > 0 ? config.getIdleTimeout() : defaultIdleTimeout;
+		this.idleTimeout = timeout * 1000L;
+	}
+
+	/**
+	 * Wait until the database is reachable.
+	 *
+	 * @param timeout
+	 *            max wait time, unit: millisecond
+	 * @return true if the database is reachable
+	 */
+	public boolean awaitReachable(long timeout) {
+		long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+
+		lock.lock();
+		try {
+			while (!reachable && !closed) {
+				if (nanos <= 0)
+					return false;
+
+				nanos = available.awaitNanos(nanos);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			lock.unlock();
+		}
+
+		return reachable;
+	}
+
+	/**
+	 * Borrow a connection, wait at most borrowTimeout milliseconds if the pool
+	 * is exhausted.
+	 *
+	 * @return a pooled connection, it must be given back by release()
+	 * @throws DatabaseUnavailableException
+	 *             if the database is being reconnected
+	 * @throws SQLException
+	 *             if timed out or failed to open a new connection
+	 */
+	public PooledConnection borrow() throws SQLException {
+		long nanos = TimeUnit.MILLISECONDS.toNanos(config.getBorrowTimeout());
+
+		lock.lock();
+		try {
+			while (true) {
+				if (closed)
+					throw new SQLException("connection pool is closed:" + config.getAlias());
+
+				if (!reachable)
+					throw new DatabaseUnavailableException(config.getAlias());
+
+				PooledConnection pc = pollIdle();
+				if (pc != null) {
+					pc.lastUsedTime = System.currentTimeMillis();
+					return pc;
+				}
+
+				if (totalCount < config.getMaxPoolSize()) {
+					totalCount++;
+					break;
+				}
+
+				if (nanos <= 0)
+					throw new SQLException("timeout to borrow connection, alias:" + config.getAlias() + ", pool size:"
+							+ totalCount);
+
+				try {
+					nanos = available.awaitNanos(nanos);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new SQLException("interrupted while borrowing connection:" + config.getAlias());
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		// open the physical connection outside of the lock
+		return new PooledConnection(openReservedConnection(), config.getStatementCacheSize());
+	}
+
+	/**
+	 * Close all connections, the pool can't be used any more.
+	 */
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+
+			if (reconnector != null)
+				reconnector.interrupt();
+
+			Iterator<PooledConnection> iter = idleList.iterator();
+			while (iter.hasNext()) {
+				closeQuietly(iter.next().getConnection());
+				totalCount--;
+			}
+
+			idleList.clear();
+			available.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Open connections until the pool holds at least minPoolSize connections.
+	 *
+	 * @throws SQLException
+	 *             if failed to connect to database, the pool is reconnected
+	 *             in background
+	 */
+	public void fill() throws SQLException {
+		while (true) {
+			lock.lock();
+			try {
+				if (closed || totalCount >= config.getMinPoolSize())
+					return;
+
+				totalCount++;
+			} finally {
+				lock.unlock();
+			}
+
+			release(new PooledConnection(openReservedConnection(), config.getStatementCacheSize()));
+		}
+	}
+
+	public DatabaseConfig getConfig() {
+		return config;
+	}
+
+	public int getIdleCount() {
+		lock.lock();
+		try {
+			return idleList.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getTotalCount() {
+		lock.lock();
+		try {
+			return totalCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public boolean isReachable() {
+		return reachable;
+	}
+
+	/**
+	 * Give back a borrowed connection. Broken or expired connections are
+	 * closed instead of being pooled.
+	 *
+	 * @param pc
+	 *            pooled connection
+	 */
+	public void release(PooledConnection pc) {
+		if (pc == null)
+			return;
+
+		long lNow = System.currentTimeMillis();
+		pc.lastUsedTime = lNow;
+		boolean bReusable = !pc.broken && !isExpired(pc, lNow);
+
+		if (bReusable) {
+			try {
+				Connection conn = pc.getConnection();
+				if (conn.isClosed()) {
+					bReusable = false;
+				} else if (conn.getAutoCommit() == false) {
+					// never leak an open transaction to the next borrower
+					conn.rollback();
+					conn.setAutoCommit(true);
+				}
+			} catch (SQLException e) {
+				StackUtil.logStackTrace(log, e);
+				bReusable = false;
+			}
+		}
+
+		if (!bReusable) {
+			discard(pc);
+			return;
+		}
+
+		lock.lock();
+		try {
+			if (closed) {
+				closeQuietly(pc.getConnection());
+				totalCount--;
+				return;
+			}
+
+			idleList.addFirst(pc);
+			evictIdle(lNow);
+			available.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void closeQuietly(Connection conn) {
+		try {
+			if (conn != null && conn.isClosed() == false)
+				conn.close();
+		} catch (Exception e) {
+			StackUtil.logStackTrace(log, e);
+		}
+	}
+
+	private void discard(PooledConnection pc) {
+		if (pc != null)
+			closeQuietly(pc.getConnection());
+
+		lock.lock();
+		try {
+			totalCount--;
+			available.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Close the idle connections from the oldest end, keep at least
+	 * minPoolSize connections. Must be called with the lock held.
+	 */
+	private void evictIdle(long lNow) {
+		while (!idleList.isEmpty() && totalCount > config.getMinPoolSize()) {
+			PooledConnection oldest = idleList.getLast();
+			if (!isExpired(oldest, lNow))
+				break;
+
+			idleList.removeLast();
+			closeQuietly(oldest.getConnection());
+			totalCount--;
+			log.debug("evict idle connection:" + config.getAlias());
+		}
+	}
+
+	private boolean isExpired(PooledConnection pc, long lNow) {
+		long maxLifetime = config.getMaxLifetime() * 1000L;
+
+		if (idleTimeout > 0 && lNow - pc.lastUsedTime > idleTimeout)
+			return true;
+
+		if (maxLifetime > 0 && lNow - pc.createTime > maxLifetime)
+			return true;
+
+		return false;
+	}
+
+	/**
+	 * Mark the database as unreachable and start the reconnector if it's not
+	 * running.
+	 */
+	private void markUnreachable(SQLException e) {
+		lock.lock();
+		try {
+			reachable = false;
+
+			if (closed || reconnector != null)
+				return;
+
+			log.error("failed to connect to db, reconnect in background:" + config.getAlias() + ", " + e);
+			reconnector = new Thread(new Reconnector(), "db-reconnector-" + config.getAlias());
+			reconnector.setDaemon(true);
+			reconnector.start();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private Connection openConnection() throws SQLException {
+		try {
+			Class.forName(config.getDriver());
+		} catch (ClassNotFoundException e) {
+			throw new SQLException("ClassNotFoundException:" + e);
+		}
+
+		Connection conn = DriverManager.getConnection(config.getConnectionString(), config.getUser(),
+				config.getPassword());
+		log.info("open db connection:" + config.getAlias());
+
+		return conn;
+	}
+
+	/**
+	 * Open a connection for a slot which is already counted in totalCount, the
+	 * slot is freed if failed.
+	 */
+	private Connection openReservedConnection() throws SQLException {
+		try {
+			return openConnection();
+		} catch (SQLException e) {
+			discard(null);
+			markUnreachable(e);
+
+			throw new DatabaseUnavailableException(config.getAlias(), e);
+		}
+	}
+
+	/**
+	 * Take an usable connection from the idle list, must be called with the
+	 * lock held.
+	 */
+	private PooledConnection pollIdle() {
+		long lNow = System.currentTimeMillis();
+
+		while (!idleList.isEmpty()) {
+			PooledConnection pc = idleList.removeFirst();
+			if (isExpired(pc, lNow)) {
+				closeQuietly(pc.getConnection());
+				totalCount--;
+				continue;
+			}
+
+			return pc;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Retry to connect with increased interval until the database is reachable
+	 * or the pool is closed.
+	 */
+	private final class Reconnector implements Runnable {
+		public void run() {
+			SleepManager sleepManager = SleepManager.getInstance(config.getAlias());
+
+			while (true) {
+				int sleepInterval = sleepManager.getNextSleepInterval();
+				log.error("db is unavailable, sleep " + sleepInterval + " secs, try again later:" + config.getAlias());
+
+				try {
+					Thread.sleep(sleepInterval * 1000L);
+				} catch (InterruptedException e) {
+					// the pool is closed
+					return;
+				}
+
+				Connection conn = null;
+				try {
+					conn = openConnection();
+				} catch (SQLException e) {
+					log.error("SQLException:" + e);
+					continue;
+				}
+
+				lock.lock();
+				try {
+					if (closed) {
+						closeQuietly(conn);
+						return;
+					}
+
+					if (totalCount < config.getMaxPoolSize()) {
+						idleList.addFirst(new PooledConnection(conn, config.getStatementCacheSize()));
+						totalCount++;
+					} else {
+						closeQuietly(conn);
+					}
+
+					reachable = true;
+					reconnector = null;
+					available.signalAll();
+				} finally {
+					lock.unlock();
+				}
+
+				sleepManager.resetSleepTick();
+				log.info("db is reachable again:" + config.getAlias());
+
+				try {
+					fill();
+				} catch (SQLException e) {
+					log.error("SQLException:" + e);
+				}
+
+				return;
+			}
+		}
+	}
+
+	/**
+	 * A physical connection and its bookkeeping. Not thread-safe, it's owned by
+	 * one borrower at a time.
+	 */
+	public static final class PooledConnection {
+		private final Connection connection;
+		private final StatementCache statementCache;
+		private final long createTime;
+		private long lastUsedTime;
+		private boolean broken = false;
+
+		private PooledConnection(Connection connection, int statementCacheSize) {
+			this.connection = connection;
+			this.statementCache = new StatementCache(connection, statementCacheSize);
+			this.createTime = System.currentTimeMillis();
+			this.lastUsedTime = this.createTime;
+		}
+
+		public Connection getConnection() {
+			return connection;
+		}
+
+		StatementCache getStatementCache() {
+			return statementCache;
+		}
+
+		/**
+		 * Mark the connection as broken, it'll be closed instead of being
+		 * pooled when it's released.
+		 */
+		public void markBroken() {
+			this.broken = true;
+		}
+	}
+}
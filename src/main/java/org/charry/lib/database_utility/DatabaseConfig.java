@@ -29,6 +29,30 @@ public class DatabaseConfig {
 	private String connectionString;
 	private String driver;
 	private final String alias;
+	private int fetchSize = 0; // rows per round trip of streaming query, 0 means driver-specific
+	// connection pool settings
+	private int minPoolSize = 1;
+	private int maxPoolSize = 10;
+	private long borrowTimeout = 30000; // in milliseconds
+	private int idleTimeout = 0; // in seconds, 0 means the factory's wait timeout
+	private int maxLifetime = 0; // in seconds, 0 means no limit
+	private int statementCacheSize = 64; // per connection, 0 means no cache
+	// query result cache settings
+	private int queryCacheMaxRows = 0; // 0 means no cache
+	private int queryCacheTtl = 60; // in seconds
+	private long coalesceTimeout = 0; // in milliseconds, 0 means no coalescing
+	private int entityCacheSize = 0; // 0 means no cache
+	// executor of the asynchronous calls
+	private int asyncPoolSize = 0; // 0 means the max pool size
+	private int asyncQueueSize = 1000;
+	// write-behind insert buffer settings
+	private int writeBehindQueueSize = 10000;
+	private int writeBehindBatchSize = 1000;
+	private long writeBehindFlushInterval = 1000; // in milliseconds
+	// adaptive batch size settings
+	private int adaptiveBatchMinSize = 10;
+	private int adaptiveBatchMaxSize = 5000;
+	private long adaptiveBatchTargetLatency = 0; // in milliseconds, 0 means fixed batch size
 
 	public static synchronized DatabaseConfig getConfig(String alias) {
 		Object obj = databaseConfigMap.get(alias);
@@ -78,26 +102,262 @@ public class DatabaseConfig {
 		databaseConfigMap.put(alias, this); // cache db config
 	}
 
+	public synchronized int getAdaptiveBatchMaxSize() {
+		return adaptiveBatchMaxSize;
+	}
+
+	public synchronized int getAdaptiveBatchMinSize() {
+		return adaptiveBatchMinSize;
+	}
+
+	public synchronized long getAdaptiveBatchTargetLatency() {
+		return adaptiveBatchTargetLatency;
+	}
+
 	public synchronized String getAlias() {
 		return alias;
 	}
 
+	/**
+	 * @return threads of the executor of the asynchronous calls
+	 */
+	public synchronized int getAsyncPoolSize() {
+		return asyncPoolSize > 0 ? asyncPoolSize : maxPoolSize;
+	}
+
+	public synchronized int getAsyncQueueSize() {
+		return asyncQueueSize;
+	}
+
+	public synchronized long getBorrowTimeout() {
+		return borrowTimeout;
+	}
+
+	public synchronized long getCoalesceTimeout() {
+		return coalesceTimeout;
+	}
+
 	public synchronized String getConnectionString() {
 		return connectionString;
 	}
 
+	public synchronized SQLDialect getDialect() {
+		return SQLDialect.fromConnectionString(connectionString);
+	}
+
 	public synchronized String getDriver() {
 		return driver;
 	}
 
+	public synchronized int getEntityCacheSize() {
+		return entityCacheSize;
+	}
+
+	public synchronized int getFetchSize() {
+		return fetchSize;
+	}
+
+	public synchronized int getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	public synchronized int getMaxLifetime() {
+		return maxLifetime;
+	}
+
+	public synchronized int getMaxPoolSize() {
+		return maxPoolSize;
+	}
+
+	public synchronized int getMinPoolSize() {
+		return minPoolSize;
+	}
+
 	public synchronized String getPassword() {
 		return password;
 	}
 
+	/**
+	 * Get the fetch size of streaming query. MySQL Connector/J only streams
+	 * the rows if the fetch size is Integer.MIN_VALUE, unless useCursorFetch is
+	 * enabled in the url.
+	 * 
+	 * @return the configured fetch size, or the driver-specific one
+	 */
+	public synchronized int getStreamFetchSize() {
+		if (fetchSize != 0)
+			return fetchSize;
+
+		if (getDialect() == SQLDialect.MYSQL)
+			return Integer.MIN_VALUE;
+
+		return 1000;
+	}
+
+	public synchronized int getQueryCacheMaxRows() {
+		return queryCacheMaxRows;
+	}
+
+	public synchronized int getQueryCacheTtl() {
+		return queryCacheTtl;
+	}
+
+	public synchronized int getStatementCacheSize() {
+		return statementCacheSize;
+	}
+
 	public synchronized String getUser() {
 		return user;
 	}
 
+	public synchronized int getWriteBehindBatchSize() {
+		return writeBehindBatchSize;
+	}
+
+	public synchronized long getWriteBehindFlushInterval() {
+		return writeBehindFlushInterval;
+	}
+
+	public synchronized int getWriteBehindQueueSize() {
+		return writeBehindQueueSize;
+	}
+
+	/**
+	 * Set the adaptive batch size, it takes effect when the batch size
+	 * controller of a table is created. The size of executeBatchInsert() and
+	 * executeUpdateBatch(table, ...) then starts at the min size and is
+	 * adjusted by the latency of the batches, see BatchSizeController.
+	 * 
+	 * @param minSize
+	 *            min rows of a batch
+	 * @param maxSize
+	 *            max rows of a batch
+	 * @param targetLatency
+	 *            max time of a batch, 0 means fixed batch size, unit:
+	 *            millisecond
+	 */
+	public synchronized void setAdaptiveBatchConfig(int minSize, int maxSize, long targetLatency) {
+		this.adaptiveBatchMinSize = Math.max(1, minSize);
+		this.adaptiveBatchMaxSize = Math.max(this.adaptiveBatchMinSize, maxSize);
+		this.adaptiveBatchTargetLatency = Math.max(0, targetLatency);
+	}
+
+	/**
+	 * Set the executor of the asynchronous calls, it takes effect when the
+	 * first asynchronous call of this alias is made.
+	 * 
+	 * @param poolSize
+	 *            threads of the executor, 0 means the max pool size
+	 * @param queueSize
+	 *            max calls waiting for a thread, the calls beyond it are
+	 *            rejected
+	 */
+	public synchronized void setAsyncConfig(int poolSize, int queueSize) {
+		this.asyncPoolSize = Math.max(0, poolSize);
+		this.asyncQueueSize = Math.max(1, queueSize);
+	}
+
+	/**
+	 * Coalesce the identical concurrent queries, see QueryCoalescer. It takes
+	 * effect when the factory of this alias is created.
+	 * 
+	 * @param coalesceTimeout
+	 *            max wait time for the in-flight query, 0 means no coalescing,
+	 *            unit: millisecond
+	 */
+	public synchronized void setCoalesceTimeout(long coalesceTimeout) {
+		this.coalesceTimeout = Math.max(0, coalesceTimeout);
+	}
+
+	/**
+	 * Set the max count of ORM objects cached for findById(), it takes effect
+	 * when the factory of this alias is created.
+	 * 
+	 * @param entityCacheSize
+	 *            0 means no cache
+	 */
+	public synchronized void setEntityCacheSize(int entityCacheSize) {
+		this.entityCacheSize = Math.max(0, entityCacheSize);
+	}
+
+	/**
+	 * Set the fetch size of streaming query.
+	 * 
+	 * @param fetchSize
+	 *            rows per round trip, 0 means driver-specific
+	 */
+	public synchronized void setFetchSize(int fetchSize) {
+		this.fetchSize = fetchSize;
+	}
+
+	/**
+	 * Set the query result cache, it takes effect when the factory of this
+	 * alias is created.
+	 * 
+	 * @param maxRows
+	 *            max rows cached, a single value counts as one row, 0 means no
+	 *            cache
+	 * @param ttl
+	 *            time to live of a cached result, unit: second
+	 */
+	public synchronized void setQueryCacheConfig(int maxRows, int ttl) {
+		this.queryCacheMaxRows = Math.max(0, maxRows);
+		this.queryCacheTtl = Math.max(1, ttl);
+	}
+
+	/**
+	 * Set the max count of prepared statements cached by each connection.
+	 * 
+	 * @param statementCacheSize
+	 *            0 means no cache
+	 */
+	public synchronized void setStatementCacheSize(int statementCacheSize) {
+		this.statementCacheSize = Math.max(0, statementCacheSize);
+	}
+
+	/**
+	 * Set the pool settings, they take effect when the pool of this alias is
+	 * created.
+	 * 
+	 * @param minPoolSize
+	 *            connections kept open even if they're idle
+	 * @param maxPoolSize
+	 *            max connections opened at the same time
+	 * @param borrowTimeout
+	 *            max wait time when the pool is exhausted, unit: millisecond
+	 * @param idleTimeout
+	 *            idle connection will be closed after it, unit: second
+	 * @param maxLifetime
+	 *            connection will be closed after it, 0 means no limit, unit:
+	 *            second
+	 */
+	public synchronized void setPoolConfig(int minPoolSize, int maxPoolSize, long borrowTimeout, int idleTimeout,
+			int maxLifetime) {
+		this.maxPoolSize = Math.max(1, maxPoolSize);
+		this.minPoolSize = Math.max(0, Math.min(minPoolSize, this.maxPoolSize));
+		this.borrowTimeout = borrowTimeout;
+		this.idleTimeout = idleTimeout;
+		this.maxLifetime = maxLifetime;
+	}
+
+	/**
+	 * Set the write-behind insert buffers, it takes effect when the buffer of a
+	 * table is created.
+	 * 
+	 * @param queueSize
+	 *            max rows waiting to be written, the writers are blocked beyond
+	 *            it
+	 * @param batchSize
+	 *            max rows written by one flush
+	 * @param flushInterval
+	 *            max time a row waits for a flush, unit: millisecond
+	 */
+	public synchronized void setWriteBehindConfig(int queueSize, int batchSize, long flushInterval) {
+		this.writeBehindQueueSize = Math.max(1, queueSize);
+		this.writeBehindBatchSize = Math.max(1, batchSize);
+		this.writeBehindFlushInterval = Math.max(1, flushInterval);
+	}
+
 	/**
 	 * Configuration file sample:
 	 * 
@@ -109,6 +369,37 @@ public class DatabaseConfig {
 	 *                         &lt;password&gt;passwd&lt;/password&gt;
 	 *                         &lt;url&gt;jdbc:mysql://faceoff/por?autoReconnect=true&lt;/url&gt;
 	 *                         &lt;driver&gt;com.mysql.jdbc.Driver&lt;/driver&gt;
+	 *                         &lt;fetchsize&gt;0&lt;/fetchsize&gt;
+	 *                         &lt;coalescetimeout&gt;0&lt;/coalescetimeout&gt;
+	 *                         &lt;pool&gt;
+	 *                                 &lt;minsize&gt;1&lt;/minsize&gt;
+	 *                                 &lt;maxsize&gt;10&lt;/maxsize&gt;
+	 *                                 &lt;borrowtimeout&gt;30000&lt;/borrowtimeout&gt;
+	 *                                 &lt;idletimeout&gt;28800&lt;/idletimeout&gt;
+	 *                                 &lt;maxlifetime&gt;0&lt;/maxlifetime&gt;
+	 *                                 &lt;statementcachesize&gt;64&lt;/statementcachesize&gt;
+	 *                         &lt;/pool&gt;
+	 *                         &lt;querycache&gt;
+	 *                                 &lt;maxrows&gt;10000&lt;/maxrows&gt;
+	 *                                 &lt;ttl&gt;60&lt;/ttl&gt;
+	 *                         &lt;/querycache&gt;
+	 *                         &lt;entitycache&gt;
+	 *                                 &lt;maxsize&gt;10000&lt;/maxsize&gt;
+	 *                         &lt;/entitycache&gt;
+	 *                         &lt;async&gt;
+	 *                                 &lt;poolsize&gt;10&lt;/poolsize&gt;
+	 *                                 &lt;queuesize&gt;1000&lt;/queuesize&gt;
+	 *                         &lt;/async&gt;
+	 *                         &lt;writebehind&gt;
+	 *                                 &lt;queuesize&gt;10000&lt;/queuesize&gt;
+	 *                                 &lt;batchsize&gt;1000&lt;/batchsize&gt;
+	 *                                 &lt;flushinterval&gt;1000&lt;/flushinterval&gt;
+	 *                         &lt;/writebehind&gt;
+	 *                         &lt;adaptivebatch&gt;
+	 *                                 &lt;minsize&gt;10&lt;/minsize&gt;
+	 *                                 &lt;maxsize&gt;5000&lt;/maxsize&gt;
+	 *                                 &lt;targetlatency&gt;200&lt;/targetlatency&gt;
+	 *                         &lt;/adaptivebatch&gt;
 	 *                 &lt;/apple&gt;
 	 * 
 	 *                 &lt;banana&gt;
@@ -121,6 +412,34 @@ public class DatabaseConfig {
 	 *         &lt;/database&gt;
 	 * &lt;/config&gt;
 	 * </pre>
+	 * 
+	 * The pool element is optional, borrowtimeout is in milliseconds, idletimeout
+	 * and maxlifetime are in seconds, statementcachesize is the count of prepared
+	 * statements cached by each connection.
+	 * 
+	 * The fetchsize element is optional, it's the rows per round trip of
+	 * streaming query, 0 means driver-specific.
+	 * 
+	 * The coalescetimeout element is optional, it's the max wait time in
+	 * milliseconds for the identical in-flight query, 0 means no coalescing.
+	 * 
+	 * The querycache element is optional, maxrows is the max rows of the cached
+	 * query results, 0 means no cache, ttl is in seconds.
+	 * 
+	 * The entitycache element is optional, maxsize is the max count of the
+	 * objects cached for findById(), 0 means no cache.
+	 * 
+	 * The async element is optional, poolsize is the threads of the
+	 * asynchronous calls, 0 means the max pool size, queuesize is the max calls
+	 * waiting for a thread.
+	 * 
+	 * The writebehind element is optional, queuesize is the max rows waiting in
+	 * the insert buffer of a table, batchsize is the max rows of a flush,
+	 * flushinterval is in milliseconds.
+	 * 
+	 * The adaptivebatch element is optional, the batch size is adjusted between
+	 * minsize and maxsize to keep a batch within targetlatency milliseconds, 0
+	 * means fixed batch size.
 	 */
 	private synchronized void loadConfig() {
 		try {
@@ -133,6 +452,33 @@ public class DatabaseConfig {
 			this.connectionString = config.getString("database." + alias + ".url");
 			log.info("conn string:" + connectionString);
 			this.driver = config.getString("database." + alias + ".driver");
+			this.fetchSize = config.getInt("database." + alias + ".fetchsize", fetchSize);
+			setCoalesceTimeout(config.getLong("database." + alias + ".coalescetimeout", coalesceTimeout));
+
+			String pool = "database." + alias + ".pool.";
+			setPoolConfig(config.getInt(pool + "minsize", minPoolSize), config.getInt(pool + "maxsize", maxPoolSize),
+					config.getLong(pool + "borrowtimeout", borrowTimeout), config.getInt(pool + "idletimeout",
+							idleTimeout), config.getInt(pool + "maxlifetime", maxLifetime));
+			setStatementCacheSize(config.getInt(pool + "statementcachesize", statementCacheSize));
+
+			String queryCache = "database." + alias + ".querycache.";
+			setQueryCacheConfig(config.getInt(queryCache + "maxrows", queryCacheMaxRows), config.getInt(queryCache
+					+ "ttl", queryCacheTtl));
+			setEntityCacheSize(config.getInt("database." + alias + ".entitycache.maxsize", entityCacheSize));
+
+			String async = "database." + alias + ".async.";
+			setAsyncConfig(config.getInt(async + "poolsize", asyncPoolSize), config.getInt(async + "queuesize",
+					asyncQueueSize));
+
+			String writeBehind = "database." + alias + ".writebehind.";
+			setWriteBehindConfig(config.getInt(writeBehind + "queuesize", writeBehindQueueSize), config.getInt(
+					writeBehind + "batchsize", writeBehindBatchSize), config.getLong(writeBehind + "flushinterval",
+					writeBehindFlushInterval));
+
+			String adaptiveBatch = "database." + alias + ".adaptivebatch.";
+			setAdaptiveBatchConfig(config.getInt(adaptiveBatch + "minsize", adaptiveBatchMinSize), config.getInt(
+					adaptiveBatch + "maxsize", adaptiveBatchMaxSize), config.getLong(adaptiveBatch + "targetlatency",
+					adaptiveBatchTargetLatency));
 		} catch (Exception e) {
 			log.error(e);
 		}
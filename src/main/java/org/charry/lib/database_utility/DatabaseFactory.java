@@ -1,42 +1,86 @@
 package org.charry.lib.database_utility;
 
+import java.io.InputStream;
+import java.lang.reflect.Method;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.RowId;
 import java.sql.SQLException;
 import java.sql.SQLRecoverableException;
 import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.charry.lib.database_utility.ConnectionPool.PooledConnection;
 import org.charry.lib.database_utility.util.SleepManager;
 import org.charry.lib.database_utility.util.StackUtil;
+import org.charry.lib.database_utility.util.StatementUtil;
 
 /**
  * Database utility, it's for commonly-used DML, for advanced feature, such as
  * transaction, please use getConnection() to get the database handler directly.
  * 
+ * Each alias owns a connection pool, so the instance could be shared by
+ * threads, every call borrows a connection and gives it back when it's done.
+ * 
  * @version 0.2.3 beta
  */
 public final class DatabaseFactory {
-	private Connection connection = null;
+	private ConnectionPool pool = null;
+	private final TableVersions tableVersions = new TableVersions();
+	private QueryCache queryCache = null;
+	private EntityCache entityCache = null;
+	private QueryCoalescer queryCoalescer = null;
+	private ExecutorService asyncExecutor = null;
+	// table and field names -> write-behind insert buffer
+	private final ConcurrentMap<String, WriteBehindBuffer> writeBehindMap = new ConcurrentHashMap<String, WriteBehindBuffer>();
+	// closes the write-behind buffers at JVM shutdown, guarded by writeBehindMap
+	private Thread writeBehindHook = null;
+	// table name in upper case without schema and quotes -> adaptive batch size
+	private final ConcurrentMap<String, BatchSizeController> batchSizeMap = new ConcurrentHashMap<String, BatchSizeController>();
 	private String databaseAlias;
-	private static String defaultDatabaseAlias = "default";
-	private static int waitTimeout = 28800; // in seconds, = 8 hours
-	private long lastActiveTime = 0;
-	private static Map<String, DatabaseFactory> databaseInstanceMap = new HashMap<String, DatabaseFactory>();
+	// connection pinned to the thread by getConnection()
+	private final ThreadLocal<PooledConnection> boundConnection = new ThreadLocal<PooledConnection>();
+	// tables written on the pinned connection, invalidated again when it's
+	// released, ALL_TABLES if unknown
+	private final ThreadLocal<Set<String>> uncommittedTables = new ThreadLocal<Set<String>>();
+	private static final String ALL_TABLES = "*";
+	private static volatile String defaultDatabaseAlias = "default";
+	private static volatile int waitTimeout = 28800; // in seconds, = 8 hours
+	private static final ConcurrentMap<String, DatabaseFactory> databaseInstanceMap = new ConcurrentHashMap<String, DatabaseFactory>();
+	// per-alias monitors, only taken when the instance is to be created
+	private static final ConcurrentMap<String, Object> creationLockMap = new ConcurrentHashMap<String, Object>();
 	private static Log log = LogFactory.getLog(DatabaseFactory.class);
+	// result of queryScalar() if no row is found
+	private static final Object NO_ROW = new Object();
+	// result of doQueryScalar() if failed
+	private static final Object FAILED = new Object();
 
 	/**
 	 * Close all database connections
 	 */
-	public static synchronized void closeAllConnections() {
+	public static void closeAllConnections() {
 		Iterator<Map.Entry<String, DatabaseFactory>> iter = databaseInstanceMap.entrySet().iterator();
 		while (iter.hasNext()) {
 			Map.Entry<String, DatabaseFactory> entry = iter.next();
@@ -45,8 +89,6 @@ public final class DatabaseFactory {
 
 			databaseInstance.closeConnection();
 		}
-
-		databaseInstanceMap.clear();
 	}
 
 	/**
@@ -60,50 +102,36 @@ public final class DatabaseFactory {
 	 * 
 	 * @return An instance of database factory
 	 */
-	public static synchronized DatabaseFactory getInstance() {
+	public static DatabaseFactory getInstance() {
 		return DatabaseFactory.getInstance(defaultDatabaseAlias);
 	}
 
 	/**
 	 * Get the database factory based on configuration.
 	 * 
+	 * The existing instance is returned without any lock, closed or idle
+	 * connections are evicted by the pool itself. Only the creation of the
+	 * instance is serialized, per alias.
+	 * 
 	 * @param config
 	 *            database configuration
 	 * @return A database instance.
 	 */
-	public static synchronized DatabaseFactory getInstance(DatabaseConfig config) {
-		Object obj = databaseInstanceMap.get(config.getAlias());
-		long lNow = new java.util.Date().getTime();
-
-		DatabaseFactory databaseInstance = null;
-		if (obj == null) {
-			databaseInstance = new DatabaseFactory(config);
-			log.info("create db connection:" + config.getAlias());
-			databaseInstanceMap.put(config.getAlias(), databaseInstance);
-		} else {
-			databaseInstance = (DatabaseFactory) obj;
-
-			try {
-				/**
-				 * If database connection is closed or idle time > X seconds,
-				 * recreate the connection
-				 */
-				if (databaseInstance.getConnection().isClosed()
-						|| (lNow - databaseInstance.lastActiveTime > waitTimeout * 1000)) {
-					databaseInstance.closeConnection();
-					databaseInstance = null;
-
-					databaseInstance = new DatabaseFactory(config);
-					log.info("db connection is closed or idle for a long time(>8hrs), recreate it:" + config.getAlias());
-					databaseInstanceMap.put(config.getAlias(), databaseInstance);
-				}
-			} catch (Exception e) {
-				StackUtil.logStackTrace(log, e);
+	public static DatabaseFactory getInstance(DatabaseConfig config) {
+		DatabaseFactory databaseInstance = databaseInstanceMap.get(config.getAlias());
+		if (databaseInstance != null)
+			return databaseInstance;
+
+		synchronized (getCreationLock(config.getAlias())) {
+			databaseInstance = databaseInstanceMap.get(config.getAlias());
+
+			if (databaseInstance == null) {
+				databaseInstance = new DatabaseFactory(config);
+				log.info("create db connection pool:" + config.getAlias());
+				databaseInstanceMap.put(config.getAlias(), databaseInstance);
 			}
 		}
 
-		databaseInstance.lastActiveTime = lNow;
-
 		return databaseInstance;
 	}
 
@@ -114,12 +142,51 @@ public final class DatabaseFactory {
 	 *            database alias
 	 * @return a shared database factory instance
 	 */
-	public static synchronized DatabaseFactory getInstance(String alias) {
+	public static DatabaseFactory getInstance(String alias) {
+		// fast path, skip the config lookup
+		DatabaseFactory databaseInstance = databaseInstanceMap.get(alias);
+		if (databaseInstance != null)
+			return databaseInstance;
+
 		DatabaseConfig config = DatabaseConfig.getConfig(alias);
 
 		return DatabaseFactory.getInstance(config);
 	}
 
+	/**
+	 * Get the database factory, wait at most timeout milliseconds until the
+	 * database is reachable.
+	 * 
+	 * @param alias
+	 *            database alias
+	 * @param timeout
+	 *            max wait time, 0 means fail fast, unit: millisecond
+	 * @return a shared database factory instance
+	 * @throws DatabaseUnavailableException
+	 *             if the database is still unreachable after timeout
+	 */
+	public static DatabaseFactory getInstance(String alias, long timeout) throws DatabaseUnavailableException {
+		DatabaseFactory databaseInstance = getInstance(alias);
+
+		if (databaseInstance.pool.awaitReachable(timeout) == false)
+			throw new DatabaseUnavailableException(alias);
+
+		return databaseInstance;
+	}
+
+	private static Object getCreationLock(String alias) {
+		Object lock = creationLockMap.get(alias);
+
+		if (lock == null) {
+			Object newLock = new Object();
+			lock = creationLockMap.putIfAbsent(alias, newLock);
+			if (lock == null)
+				lock = newLock;
+		}
+
+		return lock;
+	}
+
 	/**
 	 * Initialize a database factory based on configuration.
 	 * 
@@ -131,63 +198,258 @@ public final class DatabaseFactory {
 	}
 
 	/**
-	 * Close the database connection.
+	 * Borrow a connection from the pool, the one pinned by getConnection() is
+	 * preferred so that the calls of the same thread share one transaction.
 	 */
-	public synchronized void closeConnection() {
-		try {
-			if (connection != null && connection.isClosed() == false)
-				connection.close();
-			connection = null;
-		} catch (SQLException e) {
-			StackUtil.logStackTrace(log, e);
-		} catch (Exception e) {
-			StackUtil.logStackTrace(log, e);
+	private PooledConnection acquire() throws SQLException {
+		PooledConnection pc = boundConnection.get();
+		if (pc != null)
+			return pc;
+
+		return pool.borrow();
+	}
+
+	/**
+	 * Load rows in bulk. For MySQL, the rows are streamed by LOAD DATA LOCAL
+	 * INFILE as tab-separated text while they're iterated, no temp file is
+	 * written. For the other databases, they're inserted by
+	 * executeBatchInsert() chunk by chunk.
+	 * 
+	 * LOAD DATA LOCAL must be enabled by the server (local_infile) and the
+	 * driver (allowLoadLocalInfile, on by default).
+	 * 
+	 * @param targetTable
+	 *            table name
+	 * @param fieldNames
+	 *            column names
+	 * @param rows
+	 *            rows, the values are in the order of the column names
+	 * @return count of the loaded rows
+	 */
+	public long bulkLoad(final String targetTable, final String[] fieldNames, final Iterator<Object[]> rows) {
+		if (getDialect() == SQLDialect.MYSQL) {
+			long count = loadDataLocalInfile(targetTable, fieldNames, rows);
+			if (count >= 0)
+				return count;
+		}
+
+		BatchInsert batch = new BatchInsert(targetTable, fieldNames);
+		// keep a few chunks in memory at most
+		int maxBufferedRows = batch.getMaxChunkRows() * 10;
+		long count = 0;
+
+		while (rows.hasNext()) {
+			batch.addRow(rows.next());
+
+			if (batch.getRowCount() >= maxBufferedRows || !rows.hasNext()) {
+				int[] rowCounts = executeBatchInsert(batch);
+				for (int i = 0; i < rowCounts.length; i++) {
+					if (rowCounts[i] > 0)
+						count += rowCounts[i];
+				}
+
+				batch.clear();
+			}
 		}
 
-		databaseInstanceMap.remove(databaseAlias);
-		log.info("close connection, count of db instance:" + databaseInstanceMap.size());
+		return count;
 	}
 
 	/**
-	 * Create a database factory based on configuration.
+	 * Load ORM objects in bulk, see bulkLoad(). The objects must be of the same
+	 * class, which is annotated by TableInfo.
 	 * 
-	 * @param config
-	 *            database configuration
+	 * @param objects
+	 *            objects to save
+	 * @return count of the loaded rows
 	 */
-	private synchronized void createConnection(final DatabaseConfig config) {
-		String url = config.getConnectionString();
-		String user = config.getUser();
-		String pwd = config.getPassword();
-		String driverName = config.getDriver();
+	public long bulkLoadObjects(final Collection<?> objects) {
+		if (objects.isEmpty())
+			return 0;
 
-		while (true) {
-			try {
-				Class.forName(driverName);
-				connection = DriverManager.getConnection(url, user, pwd);
-			} catch (SQLException e) {
-				log.error("SQLException:" + e);
-			} catch (ClassNotFoundException e) {
-				log.error("ClassNotFoundException:" + e);
-			} catch (Exception e) {
-				log.error("failed to connect to database:" + e + url + user + pwd);
+		final Iterator<?> iter = objects.iterator();
+		Orm orm = new Orm(objects.iterator().next());
+
+		return bulkLoad(orm.getTableName(), orm.getColumnNames(), new Iterator<Object[]>() {
+			public boolean hasNext() {
+				return iter.hasNext();
+			}
+
+			public Object[] next() {
+				return new Orm(iter.next()).getColumnValues();
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		});
+	}
+
+	/**
+	 * Run a task on the executor of this alias, so the calls of different
+	 * aliases overlap their latency. The executor is bounded, see
+	 * DatabaseConfig.setAsyncConfig().
+	 * 
+	 * The task borrows its own connection, the one pinned by getConnection()
+	 * of the calling thread isn't shared.
+	 * 
+	 * @param task
+	 *            task calling this factory
+	 * @return future of the result
+	 * @throws RejectedExecutionException
+	 *             if the queue of the executor is full
+	 */
+	public <T> Future<T> executeAsync(final Callable<T> task) {
+		return getAsyncExecutor().submit(task);
+	}
+
+	/**
+	 * Asynchronous executeQuery(), the client code must close the ResultSetEx
+	 * of the future.
+	 * 
+	 * @param sql
+	 *            SQL string with ? as placeholder
+	 * @param params
+	 *            parameters, in the order of the placeholders
+	 * @return future of the result set
+	 */
+	public Future<ResultSetEx> executeQueryAsync(final String sql, final Object... params) {
+		return executeAsync(new Callable<ResultSetEx>() {
+			public ResultSetEx call() {
+				return params.length == 0 ? executeQuery(sql) : executeQuery(sql, params);
+			}
+		});
+	}
+
+	/**
+	 * Asynchronous executeUpdate(), the client code must close the ResultSetEx
+	 * of the future.
+	 * 
+	 * @param sql
+	 *            SQL string with ? as placeholder
+	 * @param params
+	 *            parameters, in the order of the placeholders
+	 * @return future of the result set
+	 */
+	public Future<ResultSetEx> executeUpdateAsync(final String sql, final Object... params) {
+		return executeAsync(new Callable<ResultSetEx>() {
+			public ResultSetEx call() {
+				return params.length == 0 ? executeUpdate(sql) : executeUpdate(sql, params);
 			}
+		});
+	}
+
+	/**
+	 * Asynchronous queryList().
+	 * 
+	 * @param clazz
+	 *            class of the objects
+	 * @param sql
+	 *            SQL string with ? as placeholder
+	 * @param params
+	 *            parameters, in the order of the placeholders
+	 * @return future of the objects
+	 */
+	public <T> Future<List<T>> toListAsync(final Class<T> clazz, final String sql, final Object... params) {
+		return executeAsync(new Callable<List<T>>() {
+			public List<T> call() {
+				return queryList(clazz, sql, params);
+			}
+		});
+	}
+
+	private synchronized ExecutorService getAsyncExecutor() {
+		if (asyncExecutor == null) {
+			DatabaseConfig config = pool.getConfig();
+			int poolSize = config.getAsyncPoolSize();
+
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+					new ArrayBlockingQueue<Runnable>(config.getAsyncQueueSize()), new ThreadFactory() {
+						private final AtomicInteger threadCount = new AtomicInteger();
+
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "db-async-" + databaseAlias + "-"
+									+ threadCount.incrementAndGet());
+							thread.setDaemon(true);
+
+							return thread;
+						}
+					});
+			executor.allowCoreThreadTimeOut(true);
+
+			asyncExecutor = executor;
+		}
+
+		return asyncExecutor;
+	}
 
-			if (connection == null) {
-				int sleepInterval = SleepManager.getNextSleepInterval() * 1000;
-				log.error("failed to connect to db, sleep " + sleepInterval + " secs, try again later" + url + user
-						+ pwd);
+	/**
+	 * Close the connection pool of this alias.
+	 */
+	public synchronized void closeConnection() {
+		// write the queued rows while the pool is open
+		closeWriteBehindBuffers();
+
+		synchronized (writeBehindMap) {
+			if (writeBehindHook != null) {
 				try {
-					Thread.sleep(sleepInterval);
-				} catch (Exception e) {
-					StackUtil.logStackTrace(log, e);
+					Runtime.getRuntime().removeShutdownHook(writeBehindHook);
+				} catch (IllegalStateException e) {
+					// the JVM is shutting down
 				}
-			} else {
-				SleepManager.resetSleepTick();
-				break;
+
+				writeBehindHook = null;
 			}
 		}
 
+		releaseConnection();
+		pool.close();
+
+		if (asyncExecutor != null)
+			asyncExecutor.shutdown();
+
+		databaseInstanceMap.remove(databaseAlias, this);
+		log.info("close connection pool, count of db instance:" + databaseInstanceMap.size());
+	}
+
+	private void closeWriteBehindBuffers() {
+		Iterator<WriteBehindBuffer> buffers = writeBehindMap.values().iterator();
+		while (buffers.hasNext()) {
+			buffers.next().close();
+			buffers.remove();
+		}
+	}
+
+	/**
+	 * Create the connection pool based on configuration.
+	 * 
+	 * Only one attempt is made to connect, if it fails, the pool reconnects in
+	 * background and the calls fail fast until the database is reachable.
+	 * 
+	 * @param config
+	 *            database configuration
+	 */
+	private synchronized void createConnection(final DatabaseConfig config) {
 		this.databaseAlias = config.getAlias();
+
+		pool = new ConnectionPool(config, waitTimeout);
+
+		if (config.getQueryCacheMaxRows() > 0)
+			queryCache = new QueryCache(config.getQueryCacheMaxRows(), config.getQueryCacheTtl(), tableVersions);
+
+		if (config.getEntityCacheSize() > 0)
+			entityCache = new EntityCache(config.getEntityCacheSize(), tableVersions);
+
+		if (config.getCoalesceTimeout() > 0)
+			queryCoalescer = new QueryCoalescer(config.getCoalesceTimeout());
+
+		try {
+			pool.fill();
+		} catch (SQLException e) {
+			log.error("SQLException:" + e);
+		} catch (Exception e) {
+			log.error("failed to connect to database:" + e + config.getConnectionString() + config.getUser());
+		}
 	}
 
 	/**
@@ -198,30 +460,137 @@ public final class DatabaseFactory {
 	 * @param condition
 	 *            where condition
 	 */
-	public synchronized void delete(String targetTable, String condition) {
+	public void delete(String targetTable, String condition) {
 		String sql = String.format("DELETE FROM %s WHERE %s", targetTable, condition);
 
 		ResultSetEx rx = executeUpdate(sql);
 		rx.close();
 	}
 
+	/**
+	 * Execute a multi-row insert chunk by chunk, see BatchInsert. Each chunk is
+	 * one parameterized statement, it's committed on its own if auto-commit is
+	 * on, a failed chunk doesn't stop the following ones unless the connection
+	 * is broken.
+	 * 
+	 * If the batch size of the alias is adaptive, a chunk is also limited by
+	 * the batch size of the controller of its table, it's read again before
+	 * each chunk, see getBatchSizeController().
+	 * 
+	 * @param batch
+	 *            rows to insert
+	 * @return inserted row count of each chunk, Statement.EXECUTE_FAILED for the
+	 *         failed chunks
+	 */
+	public int[] executeBatchInsert(final BatchInsert batch) {
+		return executeBatchInsert(batch, null);
+	}
+
+	/**
+	 * Execute a multi-row insert like executeBatchInsert(batch), and collect
+	 * the rows of each chunk.
+	 * 
+	 * @param chunkRowList
+	 *            row count of each chunk is added to it, null means not
+	 *            required
+	 */
+	int[] executeBatchInsert(final BatchInsert batch, final List<Integer> chunkRowList) {
+		BatchSizeController controller = getBatchSizeController(batch.getTargetTable());
+		List<Integer> rowCountList = new ArrayList<Integer>();
+		int fromRow = 0;
+		int maxRows = Integer.MAX_VALUE;
+
+		PooledConnection pc = null;
+
+		try {
+			pc = acquire();
+			StatementCache statementCache = pc.getStatementCache();
+
+			while (fromRow < batch.getRowCount()) {
+				if (controller != null)
+					maxRows = controller.getBatchSize();
+
+				int rows = batch.getChunkRows(fromRow, maxRows);
+				String sql = batch.getChunkSql(rows);
+				int rowCount = Statement.EXECUTE_FAILED;
+
+				PreparedStatement stmt = statementCache.checkout(sql, false);
+				long lStart = System.currentTimeMillis();
+				try {
+					StatementUtil.bindParameters(stmt, batch.getParameters(fromRow, rows));
+					rowCount = stmt.executeUpdate();
+				} catch (SQLRecoverableException e) {
+					throw e;
+				} catch (SQLException e) {
+					log.error("SQLException:" + e);
+					log.error("alias:" + this.databaseAlias + ", chunk:" + rowCountList.size() + ", rows:" + rows
+							+ ":" + batch.getTargetTable());
+				} finally {
+					statementCache.checkin(sql, false, stmt);
+				}
+
+				if (controller != null)
+					controller.record(rows, System.currentTimeMillis() - lStart,
+							rowCount == Statement.EXECUTE_FAILED);
+
+				rowCountList.add(rowCount);
+				if (chunkRowList != null)
+					chunkRowList.add(rows);
+				fromRow += rows;
+			}
+		} catch (SQLRecoverableException e) {
+			log.error("SQLRecoverableException");
+			StackUtil.logStackTrace(log, e);
+			markBroken(pc);
+		} catch (SQLException e) {
+			log.error("SQLException:" + e);
+			StackUtil.logStackTrace(log, e);
+		} catch (Exception e) {
+			StackUtil.logStackTrace(log, e);
+		} finally {
+			release(pc);
+		}
+
+		// the chunks which aren't executed, e.g. the connection is broken
+		while (fromRow < batch.getRowCount()) {
+			int rows = batch.getChunkRows(fromRow, maxRows);
+
+			rowCountList.add(Statement.EXECUTE_FAILED);
+			if (chunkRowList != null)
+				chunkRowList.add(rows);
+			fromRow += rows;
+		}
+
+		invalidateTable(batch.getTargetTable());
+
+		int[] rowCounts = new int[rowCountList.size()];
+		for (int i = 0; i < rowCounts.length; i++) {
+			rowCounts[i] = rowCountList.get(i);
+		}
+
+		return rowCounts;
+	}
+
 	/**
 	 * The client code must close the returned Statement and its corresponding
 	 * ResultSet, or else, it'll cause the resource leaks.
 	 * 
+	 * The statement is prepared on the connection pinned by getConnection(),
+	 * call releaseConnection() after the statement is closed.
+	 * 
 	 * @param sql
 	 *            SQL string
 	 * @return prepared statement
 	 */
-	public synchronized PreparedStatement executePreparedQuery(final String sql) {
+	public PreparedStatement executePreparedQuery(final String sql) {
 		PreparedStatement stmt = null;
 
 		try {
-			stmt = connection.prepareStatement(sql);
+			stmt = getConnection().prepareStatement(sql);
 		} catch (SQLRecoverableException e) {
 			log.error("SQLRecoverableException");
 			StackUtil.logStackTrace(log, e);
-			closeConnection();
+			markBroken(boundConnection.get());
 		} catch (SQLException e) {
 			log.error("SQLException:" + e);
 			log.error("alias:" + this.databaseAlias + ":" + sql);
@@ -244,14 +613,16 @@ public final class DatabaseFactory {
 	 *            query string
 	 * @return result set
 	 */
-	public synchronized ResultSetEx executeQuery(final String sql) {
+	public ResultSetEx executeQuery(final String sql) {
 		ResultSetEx rsEx = new ResultSetEx();
 
 		ResultSet rs = null;
 		Statement stmt = null;
 
 		try {
-			stmt = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+			rsEx.pooledConnection = acquire();
+			stmt = rsEx.pooledConnection.getConnection().createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE,
+					ResultSet.CONCUR_READ_ONLY);
 			rs = stmt.executeQuery(sql);
 
 			rsEx.setResultSet(rs);
@@ -259,7 +630,7 @@ public final class DatabaseFactory {
 		} catch (SQLRecoverableException e) {
 			log.error("SQLRecoverableException");
 			StackUtil.logStackTrace(log, e);
-			closeConnection();
+			markBroken(rsEx.pooledConnection);
 		} catch (SQLException e) {
 			log.error("SQLException:" + e);
 			log.error("alias:" + this.databaseAlias + ":" + sql);
@@ -269,232 +640,1290 @@ public final class DatabaseFactory {
 			StackUtil.logStackTrace(log, e);
 		}
 
+		if (rs == null)
+			rsEx.close(stmt);
+
 		return rsEx;
 	}
 
 	/**
-	 * Execute an SQL.
+	 * Query database with a parameterized SQL, the prepared statement is cached
+	 * by the connection and reused by the following calls.
 	 * 
-	 * The client code must close the ResultSetEx explicitly. For convenience,
-	 * all exceptions are caught, the client code doesn't need to handle it.
+	 * <p />
+	 * The client code must call its close() method.For convenience, all
+	 * exceptions are caught, the client code doesn't need to handle it.
 	 * 
 	 * @param sql
-	 *            SQL string
+	 *            query string with ? as placeholder
+	 * @param params
+	 *            parameters, in the order of the placeholders
 	 * @return result set
 	 */
-	public synchronized ResultSetEx executeUpdate(final String sql) {
+	public ResultSetEx executeQuery(final String sql, final Object... params) {
 		ResultSetEx rsEx = new ResultSetEx();
 
 		ResultSet rs = null;
-		Statement stmt = null;
+		PreparedStatement stmt = null;
 
 		try {
-			stmt = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
-			stmt.executeUpdate(sql, Statement.RETURN_GENERATED_KEYS);
+			rsEx.pooledConnection = acquire();
+			stmt = rsEx.pooledConnection.getStatementCache().checkout(sql, false);
+			StatementUtil.bindParameters(stmt, params);
+			rs = stmt.executeQuery();
 
 			rsEx.setResultSet(rs);
 			rsEx.setStatement(stmt);
-
+			rsEx.setCachedStatement(sql, false);
 		} catch (SQLRecoverableException e) {
 			log.error("SQLRecoverableException");
 			StackUtil.logStackTrace(log, e);
-			closeConnection();
+			markBroken(rsEx.pooledConnection);
 		} catch (SQLException e) {
 			log.error("SQLException:" + e);
 			log.error("alias:" + this.databaseAlias + ":" + sql);
 			StackUtil.logStackTrace(log, e);
 		} catch (Exception e) {
+			log.error("alias:" + this.databaseAlias + ":" + sql);
 			StackUtil.logStackTrace(log, e);
 		}
 
+		if (rs == null)
+			rsEx.close(stmt);
+
 		return rsEx;
 	}
 
 	/**
-	 * Execute SQL in batch, all SQL will be submitted in a transaction, if the
-	 * feature is supported
+	 * Query database with a forward-only, read-only cursor, the rows are
+	 * fetched in batches of fetch size instead of being buffered in memory, so
+	 * it's for huge result set. See DatabaseConfig.getStreamFetchSize().
 	 * 
-	 * @param sqlList
-	 *            list of the SQL string
-	 * @return true if all SQL is executed successfully, or else return false
+	 * <p />
+	 * The connection is occupied until the ResultSetEx is closed, with MySQL no
+	 * other statement could be executed on it meanwhile. The client code must
+	 * call its close() method.
+	 * 
+	 * @param sql
+	 *            query string with ? as placeholder
+	 * @param params
+	 *            parameters, in the order of the placeholders
+	 * @return result set, it only could be read forward
 	 */
-	public synchronized boolean executeUpdateBatch(final ArrayList<String> sqlList) {
-		boolean bSuccess = true;
-		boolean bAutocommit = true;
+	public ResultSetEx executeStreamQuery(final String sql, final Object... params) {
+		ResultSetEx rsEx = new ResultSetEx();
 
-		Statement stmt = null;
+		ResultSet rs = null;
+		PreparedStatement stmt = null;
 
 		try {
-			// disable auto commit
-			bAutocommit = this.connection.getAutoCommit();
-			this.connection.setAutoCommit(false);
-
-			stmt = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+			rsEx.pooledConnection = acquire();
+			stmt = rsEx.pooledConnection.getConnection().prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+					ResultSet.CONCUR_READ_ONLY);
+			stmt.setFetchSize(pool.getConfig().getStreamFetchSize());
+			StatementUtil.bindParameters(stmt, params);
+			rs = stmt.executeQuery();
 
-			for (int i = 0; i < sqlList.size(); i++) {
-				stmt.addBatch(sqlList.get(i));
-			}
-
-			stmt.executeBatch();
-			connection.commit();
+			rsEx.setResultSet(rs);
+			rsEx.setStatement(stmt);
 		} catch (SQLRecoverableException e) {
 			log.error("SQLRecoverableException");
 			StackUtil.logStackTrace(log, e);
-
-			// rollback
-			try {
-				connection.rollback();
-			} catch (Exception ex) {
-				StackUtil.logStackTrace(log, e);
-			}
-
-			bSuccess = false;
-
-			closeConnection();
+			markBroken(rsEx.pooledConnection);
 		} catch (SQLException e) {
 			log.error("SQLException:" + e);
-			log.error("alias:" + this.databaseAlias + ":" + sqlList);
-
-			// rollback
-			try {
-				connection.rollback();
-			} catch (Exception ex) {
-				StackUtil.logStackTrace(log, e);
-			}
-
-			bSuccess = false;
-		} catch (Exception e) {
-			log.error("alias:" + this.databaseAlias + ":" + sqlList);
-			StackUtil.logStackTrace(log, e);
-
-			// rollback
-			try {
-				connection.rollback();
-			} catch (Exception ex) {
-				StackUtil.logStackTrace(log, e);
-			}
-
-			bSuccess = false;
-		} finally {
-			try {
-				if (stmt != null)
-					stmt.close();
-			} catch (Exception e) {
-				StackUtil.logStackTrace(log, e);
-			}
-
-			// restore the auto-commit settings
-			try {
-				this.connection.setAutoCommit(bAutocommit);
-			} catch (Exception e) {
-				StackUtil.logStackTrace(log, e);
-			}
-		}
-
-		return bSuccess;
-	}
-
-	public synchronized boolean foundRecord(final String sql) {
-		ResultSetEx rx = executeQuery(sql);
-		boolean bFound = false;
-		try {
-			bFound = rx.getResultSet().first();
-		} catch (SQLException e) {
+			log.error("alias:" + this.databaseAlias + ":" + sql);
 			StackUtil.logStackTrace(log, e);
 		} catch (Exception e) {
+			log.error("alias:" + this.databaseAlias + ":" + sql);
 			StackUtil.logStackTrace(log, e);
-		} finally {
-			rx.close();
 		}
 
-		return bFound;
+		if (rs == null)
+			rsEx.close(stmt);
+
+		return rsEx;
 	}
 
 	/**
-	 * Return the database connection.
+	 * Page through a table in the order of a unique key, each page is read with
+	 * a seek on the key instead of an offset, so its cost doesn't grow with
+	 * its position.
 	 * 
-	 * DO NOT use this interface to close the connection, use closeConnection()
-	 * instead
+	 * @param clazz
+	 *            class of the objects
+	 * @param table
+	 *            table name
+	 * @param keyColumn
+	 *            column of a unique key, e.g. the primary key
+	 * @param pageSize
+	 *            max rows of a page
+	 * @param lastKey
+	 *            the scan starts after it, e.g. the checkpoint saved from
+	 *            KeysetPager.getLastKey(), null means from the beginning
+	 * @return pages of objects
+	 */
+	public <T> KeysetPager<T> pageByKey(final Class<T> clazz, final String table, final String keyColumn,
+			final int pageSize, final Object lastKey) {
+		return new KeysetPager<T>(this, clazz, table, keyColumn, pageSize, lastKey);
+	}
+
+	/**
+	 * Read a table in parallel, it's split by ranges of a numeric key which
+	 * are read concurrently on separate connections.
 	 * 
-	 * @return database connection
+	 * @param clazz
+	 *            class of the objects
+	 * @param table
+	 *            table name
+	 * @param keyColumn
+	 *            numeric column, e.g. the primary key, it should be indexed
+	 * @param parallelism
+	 *            partitions read at the same time, 0 means the pool size of
+	 *            the asynchronous executor
+	 * @return objects in the order of the key
 	 */
-	public synchronized Connection getConnection() {
-		return this.connection;
+	public <T> PartitionedScan<T> scanParallel(final Class<T> clazz, final String table, final String keyColumn,
+			int parallelism) {
+		return scanParallel(clazz, table, keyColumn, parallelism, PartitionedScan.DEFAULT_PARTITION_ROWS);
 	}
 
 	/**
-	 * A helper function to retrieve the field value, it only could get the
-	 * value of the first row.
+	 * Read a table in parallel like scanParallel(clazz, table, keyColumn,
+	 * parallelism), with the size of the partitions.
 	 * 
-	 * @param sql
-	 * @param fieldName
-	 * @return Integer.MIN_VALUE if no record found
+	 * @param partitionRows
+	 *            expected rows of a partition, it bounds the memory of the
+	 *            scan
+	 * @return objects in the order of the key
 	 */
-	public synchronized int getIntValue(final String sql, final String fieldName) {
-		ResultSetEx rx = executeQuery(sql);
-		int value = Integer.MIN_VALUE;
-		try {
-			if (rx.getResultSet().next()) {
-				value = rx.getResultSet().getInt(fieldName);
+	public <T> PartitionedScan<T> scanParallel(final Class<T> clazz, final String table, final String keyColumn,
+			int parallelism, int partitionRows) {
+		if (parallelism <= 0)
+			parallelism = pool.getConfig().getAsyncPoolSize();
+
+		return new PartitionedScan<T>(this, clazz, table, keyColumn, parallelism, partitionRows);
+	}
+
+	/**
+	 * Query with executeStreamQuery() and map the rows to objects as they are
+	 * read, for the results too large to be loaded by toList(). The connection
+	 * is occupied until the iterator is read to the end or closed.
+	 * 
+	 * @param clazz
+	 *            class of the objects
+	 * @param sql
+	 *            query string with ? as placeholder
+	 * @param params
+	 *            parameters, in the order of the placeholders
+	 * @return objects, it must be closed if it's not read to the end
+	 */
+	public <T> RowIterator<T> streamQuery(final Class<T> clazz, final String sql, final Object... params) {
+		return executeStreamQuery(sql, params).iterate(clazz);
+	}
+
+	/**
+	 * Execute an SQL.
+	 * 
+	 * The client code must close the ResultSetEx explicitly. For convenience,
+	 * all exceptions are caught, the client code doesn't need to handle it.
+	 * 
+	 * @param sql
+	 *            SQL string
+	 * @return result set
+	 */
+	public ResultSetEx executeUpdate(final String sql) {
+		ResultSetEx rsEx = new ResultSetEx();
+
+		ResultSet rs = null;
+		Statement stmt = null;
+		boolean bSuccess = false;
+
+		try {
+			rsEx.pooledConnection = acquire();
+			stmt = rsEx.pooledConnection.getConnection().createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE,
+					ResultSet.CONCUR_READ_ONLY);
+			stmt.executeUpdate(sql, Statement.RETURN_GENERATED_KEYS);
+
+			rsEx.setResultSet(rs);
+			rsEx.setStatement(stmt);
+			bSuccess = true;
+		} catch (SQLRecoverableException e) {
+			log.error("SQLRecoverableException");
+			StackUtil.logStackTrace(log, e);
+			markBroken(rsEx.pooledConnection);
+		} catch (SQLException e) {
+			log.error("SQLException:" + e);
+			log.error("alias:" + this.databaseAlias + ":" + sql);
+			StackUtil.logStackTrace(log, e);
+		} catch (Exception e) {
+			StackUtil.logStackTrace(log, e);
+		}
+
+		if (bSuccess == false)
+			rsEx.close(stmt);
+
+		invalidateCache(sql);
+
+		return rsEx;
+	}
+
+	/**
+	 * Execute a parameterized SQL, the prepared statement is cached by the
+	 * connection and reused by the following calls.
+	 * 
+	 * The client code must close the ResultSetEx explicitly. For convenience,
+	 * all exceptions are caught, the client code doesn't need to handle it.
+	 * 
+	 * @param sql
+	 *            SQL string with ? as placeholder
+	 * @param params
+	 *            parameters, in the order of the placeholders
+	 * @return result set
+	 */
+	public ResultSetEx executeUpdate(final String sql, final Object... params) {
+		ResultSetEx rsEx = new ResultSetEx();
+
+		PreparedStatement stmt = null;
+		boolean bSuccess = false;
+
+		try {
+			rsEx.pooledConnection = acquire();
+			stmt = rsEx.pooledConnection.getStatementCache().checkout(sql, true);
+			StatementUtil.bindParameters(stmt, params);
+			stmt.executeUpdate();
+
+			rsEx.setStatement(stmt);
+			rsEx.setCachedStatement(sql, true);
+			bSuccess = true;
+		} catch (SQLRecoverableException e) {
+			log.error("SQLRecoverableException");
+			StackUtil.logStackTrace(log, e);
+			markBroken(rsEx.pooledConnection);
+		} catch (SQLException e) {
+			log.error("SQLException:" + e);
+			log.error("alias:" + this.databaseAlias + ":" + sql);
+			StackUtil.logStackTrace(log, e);
+		} catch (Exception e) {
+			StackUtil.logStackTrace(log, e);
+		}
+
+		if (bSuccess == false)
+			rsEx.close(stmt);
+
+		invalidateCache(sql);
+
+		return rsEx;
+	}
+
+	/**
+	 * Execute SQL in batch, all SQL will be submitted in a transaction, if the
+	 * feature is supported
+	 * 
+	 * @param sqlList
+	 *            list of the SQL string
+	 * @return true if all SQL is executed successfully, or else return false
+	 */
+	public boolean executeUpdateBatch(final ArrayList<String> sqlList) {
+		return executeUpdateBatch(sqlList, sqlList.size(), 1).isSuccess();
+	}
+
+	/**
+	 * Execute SQL in batch chunk by chunk, so a large workload doesn't hold
+	 * one giant transaction.
+	 * 
+	 * Every chunk is sent as one JDBC batch, and the transaction is committed
+	 * every commitInterval chunks. If a chunk fails, the chunks since the last
+	 * commit are rolled back and reported as failed, the following chunks are
+	 * still executed unless the connection is broken.
+	 * 
+	 * @param sqlList
+	 *            list of the SQL string
+	 * @param batchSize
+	 *            statements of one chunk, 0 means all statements in one chunk
+	 * @param commitInterval
+	 *            commit every commitInterval chunks
+	 * @return update counts and failed chunks
+	 */
+	public BatchResult executeUpdateBatch(final List<String> sqlList, int batchSize, int commitInterval) {
+		return executeUpdateBatch(sqlList, batchSize, commitInterval, null);
+	}
+
+	/**
+	 * Execute SQL in batch chunk by chunk like executeUpdateBatch(sqlList,
+	 * batchSize, commitInterval), the size of each chunk is taken from the
+	 * batch size controller of the table when the chunk starts, and the time of
+	 * the chunk including its commit is fed back to it. If the batch size of
+	 * the alias isn't adaptive, all statements are in one chunk.
+	 * 
+	 * @param targetTable
+	 *            table written by the SQL, it selects the controller
+	 * @param sqlList
+	 *            list of the SQL string
+	 * @param commitInterval
+	 *            commit every commitInterval chunks
+	 * @return update counts and failed chunks
+	 */
+	public BatchResult executeUpdateBatch(final String targetTable, final List<String> sqlList, int commitInterval) {
+		return executeUpdateBatch(sqlList, sqlList.size(), commitInterval, getBatchSizeController(targetTable));
+	}
+
+	/**
+	 * @param controller
+	 *            null means the fixed batch size, or else the batch size is
+	 *            read from it before each chunk
+	 */
+	private BatchResult executeUpdateBatch(final List<String> sqlList, int batchSize, int commitInterval,
+			BatchSizeController controller) {
+		if (batchSize <= 0)
+			batchSize = Math.max(1, sqlList.size());
+		if (commitInterval <= 0)
+			commitInterval = 1;
+
+		BatchResult result = new BatchResult(sqlList.size());
+		int firstUncommitted = 0;
+		boolean bAutocommit = true;
+
+		PooledConnection pc = null;
+		Connection connection = null;
+		Statement stmt = null;
+
+		try {
+			pc = acquire();
+			connection = pc.getConnection();
+
+			// disable auto commit
+			bAutocommit = connection.getAutoCommit();
+			connection.setAutoCommit(false);
+
+			stmt = connection.createStatement();
+
+			while (result.getChunkedCount() < sqlList.size()) {
+				if (controller != null)
+					batchSize = controller.getBatchSize();
+
+				int from = result.getChunkedCount();
+				int to = Math.min(from + batchSize, sqlList.size());
+				int chunk = result.addChunk(to - from);
+				long lStart = System.currentTimeMillis();
+
+				try {
+					for (int i = from; i < to; i++) {
+						stmt.addBatch(sqlList.get(i));
+					}
+
+					result.setUpdateCounts(chunk, stmt.executeBatch());
+
+					if (chunk + 1 - firstUncommitted >= commitInterval || to == sqlList.size()) {
+						connection.commit();
+						firstUncommitted = chunk + 1;
+					}
+
+					if (controller != null)
+						controller.record(to - from, System.currentTimeMillis() - lStart, false);
+				} catch (SQLRecoverableException e) {
+					throw e;
+				} catch (SQLException e) {
+					log.error("SQLException:" + e);
+					log.error("alias:" + this.databaseAlias + ", chunk:" + chunk + ":" + sqlList.subList(from, to));
+
+					rollback(connection);
+					stmt.clearBatch();
+
+					result.fail(firstUncommitted, chunk);
+					firstUncommitted = chunk + 1;
+
+					if (controller != null)
+						controller.record(to - from, System.currentTimeMillis() - lStart, true);
+				}
+			}
+		} catch (SQLRecoverableException e) {
+			log.error("SQLRecoverableException");
+			StackUtil.logStackTrace(log, e);
+
+			rollback(connection);
+			markBroken(pc);
+		} catch (SQLException e) {
+			log.error("SQLException:" + e);
+			StackUtil.logStackTrace(log, e);
+
+			rollback(connection);
+		} catch (Exception e) {
+			log.error("alias:" + this.databaseAlias);
+			StackUtil.logStackTrace(log, e);
+
+			rollback(connection);
+		} finally {
+			try {
+				if (stmt != null)
+					stmt.close();
+			} catch (Exception e) {
+				StackUtil.logStackTrace(log, e);
+			}
+
+			// restore the auto-commit settings
+			try {
+				if (connection != null)
+					connection.setAutoCommit(bAutocommit);
+			} catch (Exception e) {
+				StackUtil.logStackTrace(log, e);
+			}
+
+			release(pc);
+		}
+
+		// the statements which aren't executed, e.g. the connection is broken
+		if (result.getChunkedCount() < sqlList.size())
+			result.addChunk(sqlList.size() - result.getChunkedCount());
+
+		// the chunks which are not committed
+		result.fail(firstUncommitted, result.getChunkCount() - 1);
+
+		if (queryCache != null || entityCache != null) {
+			Set<String> sqlSet = new HashSet<String>(sqlList);
+			for (String sql : sqlSet) {
+				invalidateCache(sql);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Check if the query returns any row, at most one row is fetched.
+	 * 
+	 * @param sql
+	 *            SQL string
+	 * @return true if found
+	 */
+	public boolean foundRecord(final String sql) {
+		return queryScalar(sql, null, ScalarType.EXISTS, null) != NO_ROW;
+	}
+
+	/**
+	 * Check if the parameterized query returns any row, at most one row is
+	 * fetched.
+	 * 
+	 * @param sql
+	 *            SQL string with ? as placeholder
+	 * @param params
+	 *            parameters, in the order of the placeholders
+	 * @return true if found
+	 */
+	public boolean foundRecord(final String sql, final Object... params) {
+		return queryScalar(sql, null, ScalarType.EXISTS, params) != NO_ROW;
+	}
+
+	/**
+	 * Return the database connection.
+	 * 
+	 * DO NOT use this interface to close the connection, use closeConnection()
+	 * instead
+	 * 
+	 * The connection is borrowed from the pool and pinned to the calling
+	 * thread, all calls of this instance on the thread will use it until
+	 * releaseConnection() is called, so it could be used for transaction. The
+	 * cached results of the tables written in the transaction are invalidated
+	 * again by releaseConnection(), call it after the commit.
+	 * 
+	 * @return database connection, null if failed to get one
+	 */
+	public Connection getConnection() {
+		PooledConnection pc = boundConnection.get();
+
+		if (pc == null) {
+			try {
+				pc = pool.borrow();
+				boundConnection.set(pc);
+			} catch (SQLException e) {
+				log.error("alias:" + this.databaseAlias + ":" + e);
+				return null;
 			}
+		}
+
+		return pc.getConnection();
+	}
+
+	/**
+	 * @return the connection pool of this alias
+	 */
+	public ConnectionPool getConnectionPool() {
+		return pool;
+	}
+
+	/**
+	 * Get the double value of the first column of the first row.
+	 * 
+	 * @param sql
+	 *            SQL string with ? as placeholder
+	 * @param defaultValue
+	 *            returned if no row is found, the value is NULL or failed
+	 * @param params
+	 *            parameters, in the order of the placeholders
+	 * @return value
+	 */
+	public double getDoubleValue(final String sql, final double defaultValue, final Object... params) {
+		Double value = getOptionalDouble(sql, params);
+
+		return value != null ? value.doubleValue() : defaultValue;
+	}
+
+	/**
+	 * @param sql
+	 *            SQL string
+	 * @param fieldName
+	 *            column name
+	 * @return the value of the first row, 0 if it's NULL, Integer.MIN_VALUE if
+	 *         no row is found or failed
+	 */
+	public int getIntValue(final String sql, final String fieldName) {
+		Object value = queryScalar(sql, fieldName, ScalarType.INT, null);
+
+		if (value == NO_ROW)
+			return Integer.MIN_VALUE;
+
+		return value != null ? ((Integer) value).intValue() : 0;
+	}
+
+	/**
+	 * Get the long value of the first column of the first row.
+	 * 
+	 * @param sql
+	 *            SQL string with ? as placeholder
+	 * @param defaultValue
+	 *            returned if no row is found, the value is NULL or failed
+	 * @param params
+	 *            parameters, in the order of the placeholders
+	 * @return value
+	 */
+	public long getLongValue(final String sql, final long defaultValue, final Object... params) {
+		Long value = getOptionalLong(sql, params);
+
+		return value != null ? value.longValue() : defaultValue;
+	}
+
+	/**
+	 * Get the double value of the first column of the first row.
+	 * 
+	 * @param sql
+	 *            SQL string with ? as placeholder
+	 * @param params
+	 *            parameters, in the order of the placeholders
+	 * @return null if no row is found, the value is NULL or failed
+	 */
+	public Double getOptionalDouble(final String sql, final Object... params) {
+		Object value = queryScalar(sql, null, ScalarType.DOUBLE, params);
+
+		return value != NO_ROW ? (Double) value : null;
+	}
+
+	/**
+	 * Get the long value of the first column of the first row.
+	 * 
+	 * @param sql
+	 *            SQL string with ? as placeholder
+	 * @param params
+	 *            parameters, in the order of the placeholders
+	 * @return null if no row is found, the value is NULL or failed
+	 */
+	public Long getOptionalLong(final String sql, final Object... params) {
+		Object value = queryScalar(sql, null, ScalarType.LONG, params);
+
+		return value != NO_ROW ? (Long) value : null;
+	}
+
+	/**
+	 * Get the string value of the first column of the first row.
+	 * 
+	 * @param sql
+	 *            SQL string with ? as placeholder
+	 * @param params
+	 *            parameters, in the order of the placeholders
+	 * @return null if no row is found, the value is NULL or failed
+	 */
+	public String getOptionalString(final String sql, final Object... params) {
+		Object value = queryScalar(sql, null, ScalarType.STRING, params);
+
+		return value != NO_ROW ? (String) value : null;
+	}
+
+	/**
+	 * @param sql
+	 *            SQL string
+	 * @param fieldName
+	 *            column name
+	 * @return the value of the first row, null if no row is found or failed
+	 */
+	public String getStringValue(final String sql, final String fieldName) {
+		Object value = queryScalar(sql, fieldName, ScalarType.STRING, null);
+
+		return value != NO_ROW ? (String) value : null;
+	}
+
+	/**
+	 * @return SQL dialect of the database
+	 */
+	public SQLDialect getDialect() {
+		return pool.getConfig().getDialect();
+	}
+
+	/**
+	 * Get the batch size controller of a table, it's created on the first
+	 * call, see DatabaseConfig.setAdaptiveBatchConfig(). Its batch size is the
+	 * metric of the size chosen for the table.
+	 * 
+	 * @param targetTable
+	 *            table name, `t`, db.t and t share one controller
+	 * @return null if the batch size of the alias isn't adaptive
+	 */
+	public BatchSizeController getBatchSizeController(final String targetTable) {
+		DatabaseConfig config = pool.getConfig();
+		if (config.getAdaptiveBatchTargetLatency() <= 0)
+			return null;
+
+		String key = TableVersions.normalize(targetTable);
+		BatchSizeController controller = batchSizeMap.get(key);
+
+		if (controller == null) {
+			BatchSizeController newController = new BatchSizeController(config.getAdaptiveBatchMinSize(), config
+					.getAdaptiveBatchMaxSize(), config.getAdaptiveBatchTargetLatency());
+			controller = batchSizeMap.putIfAbsent(key, newController);
+			if (controller == null)
+				controller = newController;
+		}
+
+		return controller;
+	}
+
+	/**
+	 * @return table name in upper case without schema and quotes -> batch size
+	 *         controller, of the tables written with adaptive batch size
+	 */
+	public Map<String, BatchSizeController> getBatchSizeControllers() {
+		return new TreeMap<String, BatchSizeController>(batchSizeMap);
+	}
+
+	/**
+	 * Get the write-behind insert buffer of a table, it's created on the first
+	 * call, see DatabaseConfig.setWriteBehindConfig(). The buffer is closed by
+	 * closeConnection() and at JVM shutdown.
+	 * 
+	 * @param targetTable
+	 *            table name
+	 * @param fieldNames
+	 *            fields of the rows added to the buffer
+	 * @return buffer shared by the callers of the same table and fields
+	 */
+	public WriteBehindBuffer getWriteBehindBuffer(final String targetTable, final String... fieldNames) {
+		String key = targetTable + '\u0000' + Arrays.toString(fieldNames);
+		WriteBehindBuffer buffer = writeBehindMap.get(key);
+
+		// a closed buffer is replaced, it doesn't accept rows any more
+		if (buffer == null || buffer.isClosed()) {
+			synchronized (writeBehindMap) {
+				buffer = writeBehindMap.get(key);
+				if (buffer == null || buffer.isClosed()) {
+					DatabaseConfig config = pool.getConfig();
+					buffer = new WriteBehindBuffer(this, databaseAlias, targetTable, fieldNames, config
+							.getWriteBehindQueueSize(), config.getWriteBehindBatchSize(), config
+							.getWriteBehindFlushInterval());
+					writeBehindMap.put(key, buffer);
+
+					// one hook for all the buffers of the alias
+					if (writeBehindHook == null) {
+						writeBehindHook = new Thread(new Runnable() {
+							public void run() {
+								closeWriteBehindBuffers();
+							}
+						}, "db-write-behind-shutdown-" + databaseAlias);
+						Runtime.getRuntime().addShutdownHook(writeBehindHook);
+					}
+				}
+			}
+		}
+
+		return buffer;
+	}
+
+	/**
+	 * Execute the SQL generated by SQLBuilder.insertOrUpdate(), the native
+	 * upsert statement is executed directly, the legacy one is executed as a
+	 * query followed by insert or update.
+	 * 
+	 * @param sqlInsertOrUpdate
+	 *            SQL string
+	 * @return result set
+	 */
+	public ResultSetEx insertOrUpdate(String sqlInsertOrUpdate) {
+		if (sqlInsertOrUpdate.indexOf(SQLBuilder.SQL_SEPARATOR) < 0)
+			return this.executeUpdate(sqlInsertOrUpdate);
+
+		String sql[] = sqlInsertOrUpdate.split("\\^\\^\\^\\^");
+		if (getIntValue(sql[0], "R") == 0) {
+			return this.executeUpdate(sql[1]);
+		} else {
+			return this.executeUpdate(sql[2]);
+		}
+	}
+
+	/**
+	 * Stream the rows by LOAD DATA LOCAL INFILE of MySQL Connector/J.
+	 * 
+	 * @return count of the loaded rows, 0 if failed, -1 if the driver doesn't
+	 *         support streaming so the rows are untouched
+	 */
+	private long loadDataLocalInfile(final String targetTable, final String[] fieldNames, final Iterator<Object[]> rows) {
+		StringBuilder sql = new StringBuilder("LOAD DATA LOCAL INFILE 'stream' INTO TABLE ");
+		sql.append(targetTable).append(" CHARACTER SET utf8");
+		sql.append(" FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' LINES TERMINATED BY '\\n' (");
+		for (int i = 0; i < fieldNames.length; i++) {
+			if (i > 0)
+				sql.append(", ");
+			sql.append(fieldNames[i]);
+		}
+		sql.append(")");
+
+		PooledConnection pc = null;
+		Statement stmt = null;
+		long count = 0;
+
+		try {
+			pc = acquire();
+			stmt = pc.getConnection().createStatement();
+
+			// com.mysql.jdbc.Statement, the driver isn't required at compile
+			// time
+			Method setStream = null;
+			try {
+				setStream = stmt.getClass().getMethod("setLocalInfileInputStream", InputStream.class);
+			} catch (NoSuchMethodException e) {
+				log.warn("LOAD DATA LOCAL INFILE isn't supported by the driver, use batch insert:" + this.databaseAlias);
+				return -1;
+			}
+
+			LoadDataInputStream in = new LoadDataInputStream(rows, fieldNames.length);
+			setStream.invoke(stmt, in);
+			try {
+				count = stmt.executeUpdate(sql.toString());
+			} finally {
+				setStream.invoke(stmt, (Object) null);
+			}
+
+			log.debug("load data, alias:" + this.databaseAlias + ", table:" + targetTable + ", rows:"
+					+ in.getRowCount() + ", loaded:" + count);
 		} catch (SQLRecoverableException e) {
 			log.error("SQLRecoverableException");
 			StackUtil.logStackTrace(log, e);
-			closeConnection();
+			markBroken(pc);
 		} catch (SQLException e) {
+			log.error("SQLException:" + e);
+			log.error("alias:" + this.databaseAlias + ":" + sql);
 			StackUtil.logStackTrace(log, e);
 		} catch (Exception e) {
 			StackUtil.logStackTrace(log, e);
+		} finally {
+			try {
+				if (stmt != null)
+					stmt.close();
+			} catch (Exception e) {
+				StackUtil.logStackTrace(log, e);
+			}
+
+			release(pc);
+		}
+
+		invalidateTable(targetTable);
+
+		return count;
+	}
+
+	/**
+	 * @return false if the database is being reconnected in background
+	 */
+	public boolean isAvailable() {
+		return pool.isReachable();
+	}
+
+	private void markBroken(PooledConnection pc) {
+		if (pc != null)
+			pc.markBroken();
+	}
+
+	/**
+	 * Update an ORM object. If it's loaded in change-tracking mode, only the
+	 * changed columns are written, and nothing is sent to the database if
+	 * there's no change, the original values are refreshed after the update.
+	 * 
+	 * @param object
+	 *            object to update
+	 * @param where
+	 *            where condition to identify the record
+	 * @return updated row count, 0 if nothing changed, -1 if failed
+	 */
+	public int updateObject(final Object object, final String where) {
+		String sql = new SQLBuilder().updateObject(object, where).sql();
+		if (sql.equals(""))
+			return 0;
+
+		int count = -1;
+		ResultSetEx rx = executeUpdate(sql);
+		try {
+			if (rx.getStatement() != null)
+				count = rx.getStatement().getUpdateCount();
+		} catch (SQLException e) {
+			StackUtil.logStackTrace(log, e);
 		} finally {
 			rx.close();
 		}
 
+		if (count >= 0 && ChangeTracker.isTracked(object))
+			new Orm(object).resetChanges();
+
+		return count;
+	}
+
+	/**
+	 * Query a single value, the result is cached if the query cache is
+	 * enabled, and the identical concurrent queries are coalesced if it's
+	 * enabled.
+	 * 
+	 * @param fieldName
+	 *            column name, null for the first column
+	 * @return the value of the first row, null if it's NULL, NO_ROW if no row
+	 *         is found or failed
+	 */
+	private Object queryScalar(final String sql, final String fieldName, final ScalarType type, final Object[] params) {
+		// a transaction may read its uncommitted rows, they mustn't be shared
+		boolean bBound = isBound();
+		final QueryCache cache = bBound ? null : queryCache;
+		QueryCoalescer coalescer = bBound ? null : queryCoalescer;
+		Object value = null;
+
+		if (cache == null && coalescer == null) {
+			value = doQueryScalar(sql, fieldName, type, params);
+			return value != FAILED ? value : NO_ROW;
+		}
+
+		final String key = QueryCache.createKey(type + ":" + fieldName, sql, params);
+		if (cache != null) {
+			value = cache.get(key);
+			if (value != QueryCache.MISS)
+				return value;
+		}
+
+		if (coalescer != null) {
+			value = coalescer.execute(key, new Callable<Object>() {
+				public Object call() {
+					return loadScalar(cache, key, sql, fieldName, type, params);
+				}
+			});
+		} else {
+			value = loadScalar(cache, key, sql, fieldName, type, params);
+		}
+
+		return value != FAILED ? value : NO_ROW;
+	}
+
+	/**
+	 * Query a single value and put it into the query cache.
+	 * 
+	 * @param cache
+	 *            null means not cached
+	 */
+	private Object loadScalar(final QueryCache cache, final String key, final String sql, final String fieldName,
+			final ScalarType type, final Object[] params) {
+		String[] tables = null;
+		long[] versions = null;
+
+		if (cache != null) {
+			tables = TableVersions.getTables(sql);
+			versions = cache.getVersions(tables);
+		}
+
+		Object value = doQueryScalar(sql, fieldName, type, params);
+
+		if (cache != null && value != FAILED && tables.length > 0)
+			cache.put(key, tables, versions, value, 1);
+
 		return value;
 	}
 
 	/**
-	 * A helper function to retrieve the field value, it only could get the
-	 * value of the first row.
+	 * Query a single value on a forward-only cursor limited to one row, so
+	 * only one small packet is fetched. The parameterized statement is cached.
 	 * 
-	 * @param sql
-	 * @param fieldName
-	 * @return null if no record found
+	 * @return the value of the first row, null if it's NULL, NO_ROW if no row
+	 *         is found, FAILED if failed
 	 */
-	public synchronized String getStringValue(final String sql, final String fieldName) {
-		ResultSetEx rx = executeQuery(sql);
-		String value = null;
+	private Object doQueryScalar(final String sql, final String fieldName, final ScalarType type, final Object[] params) {
+		PooledConnection pc = null;
+		Statement stmt = null;
+		PreparedStatement cachedStmt = null;
+		ResultSet rs = null;
+		Object value = NO_ROW;
+
 		try {
-			if (rx.getResultSet().next()) {
-				value = rx.getResultSet().getString(fieldName);
+			pc = acquire();
+
+			if (params == null || params.length == 0) {
+				stmt = pc.getConnection().createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+				stmt.setMaxRows(1);
+				stmt.setFetchSize(1);
+				rs = stmt.executeQuery(sql);
+			} else {
+				cachedStmt = pc.getStatementCache().checkoutScalar(sql);
+				StatementUtil.bindParameters(cachedStmt, params);
+				rs = cachedStmt.executeQuery();
 			}
+
+			if (rs.next())
+				value = readScalar(rs, fieldName, type);
 		} catch (SQLRecoverableException e) {
 			log.error("SQLRecoverableException");
 			StackUtil.logStackTrace(log, e);
-			closeConnection();
+			markBroken(pc);
+			value = FAILED;
 		} catch (SQLException e) {
+			log.error("SQLException:" + e);
+			log.error("alias:" + this.databaseAlias + ":" + sql);
 			StackUtil.logStackTrace(log, e);
+			value = FAILED;
 		} catch (Exception e) {
 			StackUtil.logStackTrace(log, e);
+			value = FAILED;
 		} finally {
-			rx.close();
+			try {
+				if (rs != null)
+					rs.close();
+				if (stmt != null)
+					stmt.close();
+			} catch (Exception e) {
+				StackUtil.logStackTrace(log, e);
+			}
+
+			if (cachedStmt != null)
+				pc.getStatementCache().checkinScalar(sql, cachedStmt);
+
+			release(pc);
 		}
 
 		return value;
 	}
 
-	public ResultSetEx insertOrUpdate(String sqlInsertOrUpdate) {
-		String sql[] = sqlInsertOrUpdate.split("\\^\\^\\^\\^");
-		if (getIntValue(sql[0], "R") == 0) {
-			return this.executeUpdate(sql[1]);
+	private Object readScalar(ResultSet rs, String fieldName, ScalarType type) throws SQLException {
+		Object value = null;
+
+		switch (type) {
+		case EXISTS:
+			return Boolean.TRUE;
+
+		case INT:
+			value = fieldName != null ? rs.getInt(fieldName) : rs.getInt(1);
+			break;
+
+		case LONG:
+			value = fieldName != null ? rs.getLong(fieldName) : rs.getLong(1);
+			break;
+
+		case DOUBLE:
+			value = fieldName != null ? rs.getDouble(fieldName) : rs.getDouble(1);
+			break;
+
+		case STRING:
+			value = fieldName != null ? rs.getString(fieldName) : rs.getString(1);
+			break;
+		}
+
+		return rs.wasNull() ? null : value;
+	}
+
+	/**
+	 * Query objects, the result is cached if the query cache is enabled, see
+	 * DatabaseConfig.setQueryCacheConfig(), and the identical concurrent
+	 * queries are coalesced if it's enabled, see
+	 * DatabaseConfig.setCoalesceTimeout(). The cached or coalesced objects are
+	 * shared by the callers, they must not be modified.
+	 * 
+	 * The thread holding the connection of getConnection() bypasses the cache
+	 * and the coalescing, so the rows of its open transaction aren't shared,
+	 * and it always reads its own writes.
+	 * 
+	 * @param clazz
+	 *            class of the objects
+	 * @param sql
+	 *            SQL string with ? as placeholder
+	 * @param params
+	 *            parameters, in the order of the placeholders
+	 * @return objects, empty if failed
+	 */
+	public <T> List<T> queryList(final Class<T> clazz, final String sql, final Object... params) {
+		// a transaction may read its uncommitted rows, they mustn't be shared
+		boolean bBound = isBound();
+		final QueryCache cache = bBound ? null : queryCache;
+		QueryCoalescer coalescer = bBound ? null : queryCoalescer;
+		final String key = QueryCache.createKey("L:" + clazz.getName(), sql, params);
+		Object value = null;
+
+		if (cache != null) {
+			value = cache.get(key);
+			if (value != QueryCache.MISS)
+				return copyList(clazz, value);
+		}
+
+		if (coalescer != null) {
+			value = coalescer.execute(key, new Callable<Object>() {
+				public Object call() {
+					return loadList(cache, key, clazz, sql, params);
+				}
+			});
 		} else {
-			return this.executeUpdate(sql[2]);
+			value = loadList(cache, key, clazz, sql, params);
+		}
+
+		if (value == FAILED)
+			return new ArrayList<T>();
+
+		return copyList(clazz, value);
+	}
+
+	/**
+	 * Query objects without the query cache and the coalescing.
+	 * 
+	 * @return null if failed
+	 */
+	<T> List<T> queryListUncached(final Class<T> clazz, final String sql, final Object... params) {
+		Object value = loadList(null, null, clazz, sql, params);
+
+		return value != FAILED ? copyList(clazz, value) : null;
+	}
+
+	/**
+	 * Copy a cached or shared list, so the caller could modify it.
+	 */
+	private static <T> List<T> copyList(final Class<T> clazz, final Object value) {
+		List<?> source = (List<?>) value;
+		List<T> list = new ArrayList<T>(source.size());
+
+		for (Object element : source) {
+			list.add(clazz.cast(element));
+		}
+
+		return list;
+	}
+
+	/**
+	 * Query objects and put them into the query cache.
+	 * 
+	 * @param cache
+	 *            null means not cached
+	 * @return the list, FAILED if failed
+	 */
+	private <T> Object loadList(final QueryCache cache, final String key, final Class<T> clazz, final String sql,
+			final Object[] params) {
+		String[] tables = null;
+		long[] versions = null;
+
+		if (cache != null) {
+			tables = TableVersions.getTables(sql);
+			versions = cache.getVersions(tables);
+		}
+
+		ResultSetEx rx = params == null || params.length == 0 ? executeQuery(sql) : executeQuery(sql, params);
+		if (rx.getResultSet() == null) {
+			rx.close();
+			return FAILED;
+		}
+
+		List<T> list = rx.toList(clazz);
+
+		if (cache != null && tables.length > 0)
+			cache.put(key, tables, versions, list, list.size());
+
+		return list;
+	}
+
+	/**
+	 * Find an ORM object by primary key, the class is annotated by TableInfo
+	 * and the primary key is marked by FieldInfo.id(). The object is cached if
+	 * the entity cache is enabled, see DatabaseConfig.setEntityCacheSize(), each
+	 * call returns its own copy, so it could be modified and saved. The thread
+	 * holding the connection of getConnection() bypasses the cache.
+	 * 
+	 * @param clazz
+	 *            class of the object
+	 * @param id
+	 *            primary key
+	 * @return null if it's not found or failed
+	 */
+	public <T> T findById(final Class<T> clazz, final Object id) {
+		String table = Orm.getTableName(clazz);
+		String idColumn = Orm.getIdColumnName(clazz);
+		if (table == null || idColumn == null)
+			throw new IllegalArgumentException("no table name or primary key:" + clazz.getName());
+
+		// a transaction may read its uncommitted rows, they mustn't be shared
+		EntityCache cache = isBound() ? null : entityCache;
+		long[] versions = null;
+		if (cache != null) {
+			// the cached object is never handed out, the callers may modify it
+			Object value = cache.get(table, id);
+			T copy = value != null ? Orm.copyObject(clazz.cast(value)) : null;
+			if (copy != null)
+				return copy;
+
+			versions = cache.getVersions(table);
+		}
+
+		String sql = "SELECT * FROM " + table + " WHERE " + idColumn + "=?";
+		ResultSetEx rx = executeQuery(sql, id);
+		if (rx.getResultSet() == null) {
+			rx.close();
+			return null;
+		}
+
+		List<T> list = rx.toList(clazz);
+		if (list.isEmpty())
+			return null;
+
+		T object = list.get(0);
+		T copy = cache != null ? Orm.copyObject(object) : null;
+		if (copy != null)
+			cache.put(table, id, versions, copy);
+
+		return object;
+	}
+
+	/**
+	 * @return the entity cache, null if it's disabled
+	 */
+	public EntityCache getEntityCache() {
+		return entityCache;
+	}
+
+	/**
+	 * @return the query coalescer, null if it's disabled
+	 */
+	public QueryCoalescer getQueryCoalescer() {
+		return queryCoalescer;
+	}
+
+	/**
+	 * @return the query result cache, null if it's disabled
+	 */
+	public QueryCache getQueryCache() {
+		return queryCache;
+	}
+
+	/**
+	 * @return true if the thread holds the connection of getConnection(), its
+	 *         reads may see the uncommitted rows of its transaction
+	 */
+	private boolean isBound() {
+		return boundConnection.get() != null;
+	}
+
+	/**
+	 * Invalidate the cached query results and objects of the tables written by
+	 * an SQL.
+	 * 
+	 * On the connection pinned by getConnection(), the write isn't committed
+	 * yet, another thread could cache the old rows under the new versions, so
+	 * the tables are invalidated again by releaseConnection().
+	 */
+	private void invalidateCache(String sql) {
+		if (queryCache == null && entityCache == null)
+			return;
+
+		tableVersions.invalidateBySql(sql);
+
+		if (isBound()) {
+			String[] tables = TableVersions.getTables(sql);
+			if (tables.length == 0)
+				addUncommittedTable(ALL_TABLES);
+
+			for (int i = 0; i < tables.length; i++) {
+				addUncommittedTable(tables[i]);
+			}
+		}
+	}
+
+	/**
+	 * Invalidate the cached query results and objects of a table, see
+	 * invalidateCache().
+	 */
+	private void invalidateTable(String table) {
+		if (queryCache == null && entityCache == null)
+			return;
+
+		tableVersions.invalidate(table);
+
+		if (isBound())
+			addUncommittedTable(TableVersions.normalize(table));
+	}
+
+	private void addUncommittedTable(String table) {
+		Set<String> tables = uncommittedTables.get();
+
+		if (tables == null) {
+			tables = new HashSet<String>();
+			uncommittedTables.set(tables);
 		}
+
+		tables.add(table);
 	}
 
-	public synchronized boolean notFoundRecord(final String sql) {
+	public boolean notFoundRecord(final String sql) {
 		return !(foundRecord(sql));
 	}
 
+	/**
+	 * Roll back the connection, the errors are logged.
+	 */
+	private void rollback(Connection connection) {
+		try {
+			if (connection != null)
+				connection.rollback();
+		} catch (Exception e) {
+			StackUtil.logStackTrace(log, e);
+		}
+	}
+
+	/**
+	 * Give back the connection pinned by getConnection() to the pool, the
+	 * cached results of the tables written on it are invalidated, so it must
+	 * be called after the commit.
+	 */
+	public void releaseConnection() {
+		PooledConnection pc = boundConnection.get();
+
+		if (pc != null) {
+			boundConnection.remove();
+			pool.release(pc);
+		}
+
+		Set<String> tables = uncommittedTables.get();
+		if (tables != null) {
+			uncommittedTables.remove();
+
+			if (tables.contains(ALL_TABLES)) {
+				tableVersions.invalidateAll();
+				return;
+			}
+
+			for (String table : tables) {
+				tableVersions.invalidate(table);
+			}
+		}
+	}
+
+	/**
+	 * Give back a borrowed connection unless it's pinned to the thread.
+	 */
+	private void release(PooledConnection pc) {
+		if (pc != null && pc != boundConnection.get())
+			pool.release(pc);
+	}
+
 	/**
 	 * Save the database connection as a new alias, the corresponding database
 	 * connection won't be created until the client code calls it.
@@ -515,8 +1944,148 @@ public final class DatabaseFactory {
 
 		// the object will be cached in constructor automatically
 		// if the new alias exits, it'll be overwritten/replaced.
-		new DatabaseConfig(alias, config.getUser(), config.getPassword(), config.getConnectionString(),
-				config.getDriver());
+		DatabaseConfig newConfig = new DatabaseConfig(alias, config.getUser(), config.getPassword(),
+				config.getConnectionString(), config.getDriver());
+		newConfig.setPoolConfig(config.getMinPoolSize(), config.getMaxPoolSize(), config.getBorrowTimeout(),
+				config.getIdleTimeout(), config.getMaxLifetime());
+		newConfig.setStatementCacheSize(config.getStatementCacheSize());
+		newConfig.setFetchSize(config.getFetchSize());
+		newConfig.setQueryCacheConfig(config.getQueryCacheMaxRows(), config.getQueryCacheTtl());
+		newConfig.setCoalesceTimeout(config.getCoalesceTimeout());
+		newConfig.setEntityCacheSize(config.getEntityCacheSize());
+		newConfig.setAsyncConfig(config.getAsyncPoolSize(), config.getAsyncQueueSize());
+		newConfig.setAdaptiveBatchConfig(config.getAdaptiveBatchMinSize(), config.getAdaptiveBatchMaxSize(), config
+				.getAdaptiveBatchTargetLatency());
+		newConfig.setWriteBehindConfig(config.getWriteBehindQueueSize(), config.getWriteBehindBatchSize(), config
+				.getWriteBehindFlushInterval());
+	}
+
+	/**
+	 * Save ORM objects in batches of 1000, see saveObjects(objects, batchSize).
+	 * 
+	 * @param objects
+	 *            objects of the same class
+	 * @return count of the saved objects
+	 */
+	public int saveObjects(final Collection<?> objects) {
+		return saveObjects(objects, 1000);
+	}
+
+	/**
+	 * Save ORM objects by a parameterized insert in JDBC batches, the keys
+	 * generated by the database are assigned back to the id fields of the
+	 * objects, see FieldInfo.id().
+	 * 
+	 * Each batch is committed on its own if auto-commit is on, a failed batch
+	 * doesn't stop the following ones unless the connection is broken.
+	 * 
+	 * @param objects
+	 *            objects of the same class
+	 * @param batchSize
+	 *            objects of one batch
+	 * @return count of the saved objects
+	 */
+	public int saveObjects(final Collection<?> objects, int batchSize) {
+		if (objects.isEmpty())
+			return 0;
+
+		if (batchSize <= 0)
+			batchSize = objects.size();
+
+		SQLBuilder builder = new SQLBuilder().saveObjects(objects);
+		String sql = builder.sql();
+		List<Object[]> parameterList = builder.parameters();
+		Object[] objectArray = objects.toArray();
+		int count = 0;
+
+		PooledConnection pc = null;
+
+		try {
+			pc = acquire();
+			StatementCache statementCache = pc.getStatementCache();
+
+			for (int from = 0; from < objectArray.length; from += batchSize) {
+				int to = Math.min(from + batchSize, objectArray.length);
+
+				PreparedStatement stmt = statementCache.checkout(sql, true);
+				try {
+					for (int i = from; i < to; i++) {
+						StatementUtil.bindParameters(stmt, parameterList.get(i));
+						stmt.addBatch();
+					}
+
+					stmt.executeBatch();
+					count += to - from;
+
+					assignGeneratedKeys(stmt, objectArray, from, to);
+				} catch (SQLRecoverableException e) {
+					throw e;
+				} catch (SQLException e) {
+					log.error("SQLException:" + e);
+					log.error("alias:" + this.databaseAlias + ", objects:" + from + "-" + to + ":" + sql);
+					stmt.clearBatch();
+				} finally {
+					statementCache.checkin(sql, true, stmt);
+				}
+			}
+		} catch (SQLRecoverableException e) {
+			log.error("SQLRecoverableException");
+			StackUtil.logStackTrace(log, e);
+			markBroken(pc);
+		} catch (SQLException e) {
+			log.error("SQLException:" + e);
+			StackUtil.logStackTrace(log, e);
+		} catch (Exception e) {
+			StackUtil.logStackTrace(log, e);
+		} finally {
+			release(pc);
+		}
+
+		invalidateCache(sql);
+
+		return count;
+	}
+
+	/**
+	 * Assign the generated keys of a batch to the objects in order, the driver
+	 * may return no key, e.g. the table has no auto-increment column.
+	 * 
+	 * Some drivers return only the last key, or a ROWID per row, e.g. jTDS and
+	 * Oracle, then the keys can't be matched to the objects and none is
+	 * assigned.
+	 */
+	private void assignGeneratedKeys(PreparedStatement stmt, Object[] objectArray, int from, int to)
+			throws SQLException {
+		ResultSet rs = stmt.getGeneratedKeys();
+		if (rs == null)
+			return;
+
+		List<Object> keyList = new ArrayList<Object>(to - from);
+		try {
+			while (rs.next()) {
+				keyList.add(rs.getObject(1));
+			}
+		} finally {
+			rs.close();
+		}
+
+		if (keyList.isEmpty())
+			return;
+
+		if (keyList.size() != to - from || keyList.get(0) instanceof RowId) {
+			log.warn("generated keys aren't assigned, alias:" + this.databaseAlias + ", objects:" + (to - from)
+					+ ", keys:" + keyList.size() + ", first key:" + keyList.get(0));
+			return;
+		}
+
+		for (int i = from; i < to; i++) {
+			if (new Orm(objectArray[i]).setGeneratedKey(keyList.get(i - from)) == false)
+				break;
+		}
+	}
+
+	private enum ScalarType {
+		EXISTS, INT, LONG, DOUBLE, STRING
 	}
 
 	public final static class FactoryFacade {
@@ -530,7 +2099,7 @@ public final class DatabaseFactory {
 		 * @param alias
 		 *            database alias name
 		 */
-		public static synchronized void setDefaultDatabaseAlias(String alias) {
+		public static void setDefaultDatabaseAlias(String alias) {
 			DatabaseFactory.defaultDatabaseAlias = alias;
 		}
 
@@ -544,15 +2113,40 @@ public final class DatabaseFactory {
 			SleepManager.setSleepInterval(interval);
 		}
 
+		/**
+		 * Set the cap of the increased retry interval of all aliases.
+		 * 
+		 * @param interval
+		 *            max sleep interval, unit: second
+		 */
+		public static void setMaxRetryInterval(int interval) {
+			SleepManager.setDefaultMaxSleepInterval(interval);
+		}
+
+		/**
+		 * Set the cap of the increased retry interval of one alias.
+		 * 
+		 * @param alias
+		 *            database alias
+		 * @param interval
+		 *            max sleep interval, unit: second, 0 means the default one
+		 */
+		public static void setMaxRetryInterval(String alias, int interval) {
+			SleepManager.getInstance(alias).setMaxSleepInterval(interval);
+		}
+
 		/**
 		 * Set timeout, when the connection is idle for a long time,
 		 * reconnection is required. the timeout value is the minimum one of all
 		 * database which are configured in config_database.xml
 		 * 
+		 * It's the idle timeout of the pooled connections unless idletimeout is
+		 * configured for the alias, it only affects the pools created later.
+		 * 
 		 * @param timeout
 		 *            max timeout
 		 */
-		public static synchronized void setWaitTimeout(int timeout) {
+		public static void setWaitTimeout(int timeout) {
 			DatabaseFactory.waitTimeout = timeout;
 		}
 	}
@@ -566,21 +2160,46 @@ public final class DatabaseFactory {
 	public final class ResultSetEx {
 		private ResultSet resultSet = null;
 		private Statement statement = null;
+		private PooledConnection pooledConnection = null;
+		// set if the statement is taken from the statement cache
+		private String cachedSql = null;
+		private boolean bReturnKeys = false;
 		private long lastId = -1;
 
 		/**
 		 * Close the resources, this function must be called by the client code.
+		 * The connection is given back to the pool.
 		 */
 		public void close() {
 			try {
 				if (resultSet != null)
 					resultSet.close();
 
-				if (statement != null)
-					statement.close();
+				if (statement != null) {
+					if (cachedSql != null && pooledConnection != null) {
+						// the statement is reused by others, forget it
+						pooledConnection.getStatementCache().checkin(cachedSql, bReturnKeys,
+								(PreparedStatement) statement);
+						statement = null;
+					} else {
+						statement.close();
+					}
+				}
 			} catch (Exception e) {
 				StackUtil.logStackTrace(log, e);
 			}
+
+			cachedSql = null;
+
+			release(pooledConnection);
+			pooledConnection = null;
+		}
+
+		private void close(Statement stmt) {
+			if (statement == null)
+				statement = stmt;
+
+			close();
 		}
 
 		/**
@@ -593,6 +2212,9 @@ public final class DatabaseFactory {
 		public long getLastId() {
 			// this only works for one-insert-statement, if there's multiple
 			// inserts, use stmt.getGeneratedKeys instead.
+			if (statement == null)
+				return this.lastId;
+
 			ResultSet rsKeys;
 			try {
 				rsKeys = statement.getGeneratedKeys();
@@ -606,7 +2228,7 @@ public final class DatabaseFactory {
 			} catch (SQLRecoverableException e) {
 				log.error("SQLRecoverableException");
 				StackUtil.logStackTrace(log, e);
-				closeConnection();
+				markBroken(pooledConnection);
 			} catch (SQLException e) {
 				StackUtil.logStackTrace(log, e);
 			}
@@ -622,6 +2244,20 @@ public final class DatabaseFactory {
 			return statement;
 		}
 
+		/**
+		 * @return true if the result set could only be read forward, such as
+		 *         the one returned by executeStreamQuery()
+		 */
+		public boolean isForwardOnly() {
+			try {
+				return resultSet != null && resultSet.getType() == ResultSet.TYPE_FORWARD_ONLY;
+			} catch (SQLException e) {
+				StackUtil.logStackTrace(log, e);
+			}
+
+			return false;
+		}
+
 		public void setLastId(long id) {
 			this.lastId = id;
 		}
@@ -634,10 +2270,53 @@ public final class DatabaseFactory {
 			this.statement = statement;
 		}
 
+		private void setCachedStatement(String sql, boolean bReturnKeys) {
+			this.cachedSql = sql;
+			this.bReturnKeys = bReturnKeys;
+		}
+
+		public <T> RowIterator<T> iterate(Class<T> clazz) {
+			return iterate(clazz, false);
+		}
+
+		/**
+		 * Map the rows to objects lazily, the ResultSetEx is closed when the
+		 * last row is read or the iterator is closed. With
+		 * executeStreamQuery(), only the rows of one fetch are held in memory.
+		 * 
+		 * @param clazz
+		 *            class of the objects
+		 * @param bTrackChanges
+		 *            remember the original values of the objects, so
+		 *            updateObject() only writes the changed columns
+		 * @return objects, it must be closed if it's not read to the end
+		 */
+		public <T> RowIterator<T> iterate(Class<T> clazz, boolean bTrackChanges) {
+			return new RowIterator<T>(resultSet, clazz, bTrackChanges, new Runnable() {
+				public void run() {
+					close();
+				}
+			});
+		}
+
 		public <T> List<T> toList(Class<T> clazz) {
+			return toList(clazz, false);
+		}
+
+		/**
+		 * Map the rows to objects and close the result set.
+		 * 
+		 * @param clazz
+		 *            class of the objects
+		 * @param bTrackChanges
+		 *            remember the original values of the objects, so
+		 *            updateObject() only writes the changed columns
+		 * @return objects
+		 */
+		public <T> List<T> toList(Class<T> clazz, boolean bTrackChanges) {
 			Orm orm = new Orm();
 
-			List<T> list = orm.dumpResultSet(resultSet, clazz);
+			List<T> list = orm.dumpResultSet(resultSet, clazz, bTrackChanges);
 
 			this.close();
 
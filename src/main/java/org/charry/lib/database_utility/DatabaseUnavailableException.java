@@ -0,0 +1,29 @@
+package org.charry.lib.database_utility;
+
+import java.sql.SQLException;
+
+/**
+ * Thrown when the database of an alias can't be reached, the connection is
+ * being re-established in background.
+ * 
+ * @author charry
+ * 
+ */
+public class DatabaseUnavailableException extends SQLException {
+	private static final long serialVersionUID = 1L;
+	private final String alias;
+
+	public DatabaseUnavailableException(String alias) {
+		super("database is unavailable:" + alias);
+		this.alias = alias;
+	}
+
+	public DatabaseUnavailableException(String alias, Throwable cause) {
+		super("database is unavailable:" + alias, cause);
+		this.alias = alias;
+	}
+
+	public String getAlias() {
+		return alias;
+	}
+}
@@ -0,0 +1,202 @@
+package org.charry.lib.database_utility;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of ORM objects of one database alias keyed by table and
+ * primary key, it's consulted by DatabaseFactory.findById(), see
+ * DatabaseConfig.setEntityCacheSize().
+ *
+ * The writes through DatabaseFactory invalidate the cached objects of the
+ * tables they touch, including the SQL of SQLBuilder.updateObject() and
+ * saveObject(). findById() caches and returns copies, so the cached objects
+ * aren't shared by its callers.
+ *
+ * @author charry
+ *
+ */
+public final class EntityCache {
+	private final int maxSize;
+	private final LinkedHashMap<String, Entry> entryMap = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private final TableVersions tableVersions;
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	/**
+	 * @param maxSize
+	 *            max objects cached
+	 */
+	public EntityCache(int maxSize) {
+		this(maxSize, new TableVersions());
+	}
+
+	/**
+	 * @param tableVersions
+	 *            write versions of the tables, shared with the query cache
+	 */
+	EntityCache(int maxSize, TableVersions tableVersions) {
+		this.maxSize = maxSize;
+		this.tableVersions = tableVersions;
+	}
+
+	/**
+	 * Get a cached object.
+	 *
+	 * @param table
+	 *            table name
+	 * @param id
+	 *            primary key
+	 * @return null if it's absent or stale
+	 */
+	public Object get(String table, Object id) {
+		String key = createKey(table, id);
+		Entry entry;
+
+		synchronized (entryMap) {
+			entry = entryMap.get(key);
+
+			if (entry != null && !tableVersions.isCurrent(entry.tables, entry.versions)) {
+				entryMap.remove(key);
+				entry = null;
+			}
+		}
+
+		if (entry == null) {
+			missCount.incrementAndGet();
+			return null;
+		}
+
+		hitCount.incrementAndGet();
+		return entry.value;
+	}
+
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return hits / (hits + misses), 0 if it's never read
+	 */
+	public double getHitRate() {
+		long hits = hitCount.get();
+		long total = hits + missCount.get();
+
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * @return count of the invalidations of the alias
+	 */
+	public long getInvalidationCount() {
+		return tableVersions.getInvalidationCount();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public int getSize() {
+		synchronized (entryMap) {
+			return entryMap.size();
+		}
+	}
+
+	/**
+	 * Take the version of the table, it must be called before the object is
+	 * loaded and passed to put().
+	 */
+	long[] getVersions(String table) {
+		return tableVersions.getVersions(new String[] { TableVersions.normalize(table) });
+	}
+
+	/**
+	 * Drop a cached object.
+	 *
+	 * @param table
+	 *            table name
+	 * @param id
+	 *            primary key
+	 */
+	public void invalidate(String table, Object id) {
+		synchronized (entryMap) {
+			entryMap.remove(createKey(table, id));
+		}
+	}
+
+	/**
+	 * Drop all cached objects.
+	 */
+	public void invalidateAll() {
+		synchronized (entryMap) {
+			entryMap.clear();
+		}
+	}
+
+	/**
+	 * Cache an object.
+	 *
+	 * @param versions
+	 *            the versions taken by getVersions() before the object is
+	 *            loaded
+	 */
+	void put(String table, Object id, long[] versions, Object value) {
+		if (maxSize <= 0)
+			return;
+
+		String[] tables = new String[] { TableVersions.normalize(table) };
+		Entry entry = new Entry(value, tables, versions);
+
+		synchronized (entryMap) {
+			// written during the query
+			if (!tableVersions.isCurrent(tables, versions))
+				return;
+
+			entryMap.put(createKey(table, id), entry);
+
+			Iterator<Map.Entry<String, Entry>> iter = entryMap.entrySet().iterator();
+			while (entryMap.size() > maxSize && iter.hasNext()) {
+				iter.next();
+				iter.remove();
+				evictionCount.incrementAndGet();
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("size:%d, hits:%d, misses:%d, hit rate:%.2f, evictions:%d, invalidations:%d",
+				getSize(), getHitCount(), getMissCount(), getHitRate(), getEvictionCount(), getInvalidationCount());
+	}
+
+	/**
+	 * The key is independent of the type of the primary key, e.g. 1 and 1L,
+	 * and of the schema and quotes of the table name.
+	 */
+	private static String createKey(String table, Object id) {
+		return TableVersions.normalize(table) + '\u0000' + id;
+	}
+
+	private static final class Entry {
+		private final Object value;
+		private final String[] tables;
+		private final long[] versions;
+
+		Entry(Object value, String[] tables, long[] versions) {
+			this.value = value;
+			this.tables = tables;
+			this.versions = versions;
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package org.charry.lib.database_utility;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Mapper of an entity annotated with TableInfo, it's generated at compile time
+ * by EntityMapperProcessor as a class named Entity_Mapper in the package of the
+ * entity. Orm uses it instead of reflection if it's found.
+ * 
+ * @author charry
+ * 
+ * @param <T>
+ *            type of the entity
+ */
+public interface EntityMapper<T> {
+	/**
+	 * @return the table name of TableInfo
+	 */
+	String getTableName();
+
+	/**
+	 * @return table field names of INSERT/UPDATE, in the order of getValues()
+	 */
+	String[] getColumnNames();
+
+	/**
+	 * @return object field names, in the order of getColumnNames()
+	 */
+	String[] getFieldNames();
+
+	/**
+	 * @param index
+	 *            index of the column in getColumnNames()
+	 * @return true if the value is quoted as string in SQL
+	 */
+	boolean isStringColumn(int index);
+
+	/**
+	 * @return field values of the object, in the order of getColumnNames(),
+	 *         they could be bound to the parameters of a prepared statement
+	 */
+	Object[] getValues(T object);
+
+	/**
+	 * @return upper-cased table field names which could be read from result
+	 *         set, in the order of the columns of mapRow()
+	 */
+	String[] getReadColumnNames();
+
+	/**
+	 * Create an object based on the current row.
+	 * 
+	 * @param rs
+	 *            result set
+	 * @param columns
+	 *            positions of getReadColumnNames() in the result set, 0 if
+	 *            the column is absent
+	 * @return the object
+	 * @throws SQLException
+	 */
+	T mapRow(ResultSet rs, int[] columns) throws SQLException;
+}
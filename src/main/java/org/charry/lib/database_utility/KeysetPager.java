@@ -0,0 +1,181 @@
+package org.charry.lib.database_utility;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.charry.lib.database_utility.DatabaseFactory.ResultSetEx;
+import org.charry.lib.database_utility.util.StackUtil;
+
+/**
+ * Page through a table in the order of a unique key, see
+ * DatabaseFactory.pageByKey().
+ *
+ * Each page is read with "key > last key of the previous page" instead of an
+ * offset, so the database seeks the index and the cost of a page doesn't grow
+ * with its position. The last key could be saved by the client code as a
+ * checkpoint and passed to pageByKey() to resume the scan.
+ *
+ * The iteration ends on the first short page or on an error, which is logged
+ * and reported by isFailed(), so the client code could tell an incomplete
+ * scan from the end of the table.
+ *
+ * @author charry
+ *
+ */
+public final class KeysetPager<T> implements Iterator<List<T>>, Iterable<List<T>> {
+	private static Log log = LogFactory.getLog(KeysetPager.class);
+	private final DatabaseFactory factory;
+	private final Class<T> clazz;
+	private final String firstPageSql;
+	private final String nextPageSql;
+	private final String keyColumn;
+	private final int pageSize;
+	private Object lastKey;
+	// key of the last row read, it's ahead of lastKey while a page is prefetched
+	private Object fetchKey;
+	private List<T> nextPage = null;
+	private boolean bEnd = false;
+	private boolean bFailed = false;
+	private long pageCount = 0;
+
+	KeysetPager(DatabaseFactory factory, Class<T> clazz, String table, String keyColumn, int pageSize, Object lastKey) {
+		if (pageSize <= 0)
+			throw new IllegalArgumentException("page size:" + pageSize);
+
+		this.factory = factory;
+		this.clazz = clazz;
+		this.keyColumn = keyColumn;
+		this.pageSize = pageSize;
+		this.lastKey = lastKey;
+		this.fetchKey = lastKey;
+
+		SQLDialect dialect = factory.getDialect();
+		this.firstPageSql = getPageSql(dialect, table, keyColumn, pageSize, true);
+		this.nextPageSql = getPageSql(dialect, table, keyColumn, pageSize, false);
+	}
+
+	/**
+	 * Build the SQL of a page.
+	 *
+	 * @param bFirst
+	 *            true if no key is read yet, it has no placeholder, otherwise
+	 *            the last key is the only parameter
+	 */
+	static String getPageSql(SQLDialect dialect, String table, String keyColumn, int pageSize, boolean bFirst) {
+		String where = bFirst ? "" : " WHERE " + keyColumn + " > ?";
+		String orderBy = " ORDER BY " + keyColumn;
+
+		switch (dialect) {
+		case MYSQL:
+			return "SELECT * FROM " + table + where + orderBy + " LIMIT " + pageSize;
+		case ORACLE:
+			return "SELECT * FROM (SELECT * FROM " + table + where + orderBy + ") WHERE ROWNUM <= " + pageSize;
+		case SQLSERVER:
+			return "SELECT TOP " + pageSize + " * FROM " + table + where + orderBy;
+		default:
+			return "SELECT * FROM " + table + where + orderBy + " FETCH FIRST " + pageSize + " ROWS ONLY";
+		}
+	}
+
+	/**
+	 * @return key of the last row returned, the checkpoint to resume from,
+	 *         null if no row is read yet
+	 */
+	public Object getLastKey() {
+		return lastKey;
+	}
+
+	/**
+	 * @return true if the iteration ended because of an error
+	 */
+	public boolean isFailed() {
+		return bFailed;
+	}
+
+	/**
+	 * @return pages returned by next() so far
+	 */
+	public long getPageCount() {
+		return pageCount;
+	}
+
+	public int getPageSize() {
+		return pageSize;
+	}
+
+	public boolean hasNext() {
+		if (nextPage == null && !bEnd)
+			nextPage = fetch();
+
+		return nextPage != null;
+	}
+
+	public Iterator<List<T>> iterator() {
+		return this;
+	}
+
+	/**
+	 * @return objects of the next page, in the order of the key
+	 */
+	public List<T> next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+
+		List<T> page = nextPage;
+		nextPage = null;
+		lastKey = fetchKey;
+		pageCount++;
+
+		return page;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * @return null if there are no more rows
+	 */
+	private List<T> fetch() {
+		ResultSetEx rx = fetchKey == null ? factory.executeQuery(firstPageSql) : factory.executeQuery(nextPageSql,
+				fetchKey);
+		ResultSet rs = rx.getResultSet();
+		List<T> page = new ArrayList<T>(pageSize);
+		Object key = fetchKey;
+
+		bEnd = true;
+		try {
+			if (rs == null) {
+				bFailed = true;
+			} else {
+				RowMapper<T> rowMapper = new Orm().getRowMapper(rs, clazz);
+
+				while (rs.next()) {
+					key = rs.getObject(keyColumn);
+					page.add(rowMapper.mapRow(rs));
+				}
+
+				bEnd = page.size() < pageSize;
+			}
+		} catch (Exception e) {
+			StackUtil.logStackTrace(log, e);
+			bFailed = true;
+			page.clear();
+		} finally {
+			rx.close();
+		}
+
+		if (page.isEmpty()) {
+			bEnd = true;
+			return null;
+		}
+
+		fetchKey = key;
+		return page;
+	}
+}
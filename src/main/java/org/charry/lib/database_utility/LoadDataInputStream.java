@@ -0,0 +1,154 @@
+package org.charry.lib.database_utility;
+
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.sql.Timestamp;
+import java.util.Iterator;
+
+/**
+ * Rows encoded as tab-separated UTF-8 text for MySQL LOAD DATA LOCAL INFILE.
+ *
+ * The rows are encoded on demand while the driver reads the stream, so the
+ * data is never materialized as a whole. The format matches the defaults of
+ * LOAD DATA: fields terminated by tab, escaped by backslash, lines terminated
+ * by newline, NULL written as \N.
+ *
+ * @author charry
+ *
+ */
+final class LoadDataInputStream extends InputStream {
+	// encode rows until the buffer reaches this size
+	private static final int BUFFER_SIZE = 8192;
+	private final Iterator<Object[]> rowIterator;
+	private final int columnCount;
+	private final StringBuilder text = new StringBuilder(BUFFER_SIZE * 2);
+	private byte[] buffer = new byte[0];
+	private int position = 0;
+	private long rowCount = 0;
+
+	/**
+	 * @param rowIterator
+	 *            rows, the values are in the order of the columns
+	 * @param columnCount
+	 *            count of the columns
+	 */
+	LoadDataInputStream(final Iterator<Object[]> rowIterator, int columnCount) {
+		this.rowIterator = rowIterator;
+		this.columnCount = columnCount;
+	}
+
+	/**
+	 * @return count of the rows which have been encoded
+	 */
+	long getRowCount() {
+		return rowCount;
+	}
+
+	@Override
+	public int read() {
+		if (!fill())
+			return -1;
+
+		return buffer[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if (len == 0)
+			return 0;
+
+		if (!fill())
+			return -1;
+
+		int n = Math.min(len, buffer.length - position);
+		System.arraycopy(buffer, position, b, off, n);
+		position += n;
+
+		return n;
+	}
+
+	/**
+	 * Encode the following rows if the buffer is drained.
+	 *
+	 * @return false if there's no more data
+	 */
+	private boolean fill() {
+		if (position < buffer.length)
+			return true;
+
+		text.setLength(0);
+		while (text.length() < BUFFER_SIZE && rowIterator.hasNext()) {
+			appendRow(text, rowIterator.next());
+			rowCount++;
+		}
+
+		if (text.length() == 0)
+			return false;
+
+		try {
+			buffer = text.toString().getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			// UTF-8 is always supported
+			throw new IllegalStateException(e);
+		}
+		position = 0;
+
+		return true;
+	}
+
+	private void appendRow(StringBuilder sb, Object[] row) {
+		if (row == null || row.length != columnCount)
+			throw new IllegalArgumentException("expect " + columnCount + " values of row:" + rowCount);
+
+		for (int i = 0; i < row.length; i++) {
+			if (i > 0)
+				sb.append('\t');
+
+			appendValue(sb, row[i]);
+		}
+
+		sb.append('\n');
+	}
+
+	static void appendValue(StringBuilder sb, Object value) {
+		if (value == null) {
+			sb.append("\\N");
+			return;
+		}
+
+		String s;
+		if (value instanceof Boolean)
+			s = ((Boolean) value).booleanValue() ? "1" : "0";
+		else if (value instanceof java.util.Date && !(value instanceof java.sql.Date)
+				&& !(value instanceof java.sql.Time) && !(value instanceof Timestamp))
+			s = new Timestamp(((java.util.Date) value).getTime()).toString();
+		else if (value instanceof byte[])
+			throw new IllegalArgumentException("binary value isn't supported by LOAD DATA");
+		else
+			s = value.toString();
+
+		for (int i = 0; i < s.length(); i++) {
+			char ch = s.charAt(i);
+
+			switch (ch) {
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\0':
+				sb.append("\\0");
+				break;
+			default:
+				sb.append(ch);
+			}
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package org.charry.lib.database_utility;
 
+import java.beans.IntrospectionException;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.sql.ResultSet;
@@ -7,12 +9,20 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.beanutils.BeanUtils;
 import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.charry.lib.database_utility.annotation.EntityMapperProcessor;
 import org.charry.lib.database_utility.annotation.FieldInfo;
 import org.charry.lib.database_utility.annotation.FieldInfo.KType;
 import org.charry.lib.database_utility.annotation.TableInfo;
@@ -20,8 +30,19 @@ import org.charry.lib.database_utility.util.StackUtil;
 
 public class Orm {
 	private static Log log = LogFactory.getLog(Orm.class);
-	private Class clazz = null;
+	private static final int MAX_CACHED_ROW_MAPPER = 1024;
+	// class -> {object field name, table field name} of the mapped fields
+	private static final ConcurrentMap<Class<?>, List<String[]>> fieldNameCache = new ConcurrentHashMap<Class<?>, List<String[]>>();
+	// class -> name of the generated key field, "" if absent
+	private static final ConcurrentMap<Class<?>, String> idFieldCache = new ConcurrentHashMap<Class<?>, String>();
+	// class -> mapper generated at compile time, or NO_ENTITY_MAPPER
+	private static final ConcurrentMap<Class<?>, Object> entityMapperCache = new ConcurrentHashMap<Class<?>, Object>();
+	private static final Object NO_ENTITY_MAPPER = new Object();
+	// (class, columns of the result set) -> compiled row mapper
+	private static final ConcurrentMap<FieldMapKey, RowMapper<?>> rowMapperCache = new ConcurrentHashMap<FieldMapKey, RowMapper<?>>();
+	private Class<?> clazz = null;
 	private Object object = null;
+	private EntityMapper<Object> entityMapper = null;
 	private String tableName = "";
 
 	/**
@@ -39,29 +60,36 @@ public class Orm {
 	public Orm(Object object) {
 		this.clazz = object.getClass();
 		this.object = object;
-		TableInfo tableInfo = (TableInfo) clazz.getAnnotation(TableInfo.class);
+		this.entityMapper = getEntityMapper(clazz);
+		TableInfo tableInfo = clazz.getAnnotation(TableInfo.class);
 
 		if (tableInfo != null)
 			this.tableName = tableInfo.name();
 	}
 
-	public <T> List<T> dumpResultSet(ResultSet rs, Class clazz) {
-		// get the field mapping
-		ArrayList<FieldMap> fieldMap = getFieldMap(rs, clazz);
+	public <T> List<T> dumpResultSet(ResultSet rs, Class<T> clazz) {
+		return dumpResultSet(rs, clazz, false);
+	}
 
+	/**
+	 * Map the rows to objects.
+	 * 
+	 * @param bTrackChanges
+	 *            remember the original values of the objects, so the update
+	 *            SQL only contains the changed columns
+	 */
+	public <T> List<T> dumpResultSet(ResultSet rs, Class<T> clazz, boolean bTrackChanges) {
 		List<T> elements = new ArrayList<T>();
 		try {
-			while (rs.next()) {
-				Object newInstance = clazz.newInstance();
-
-				for (int i = 0; i < fieldMap.size(); i++) {
-					int columnPosition = fieldMap.get(i).getTableFieldColumn();
-					Object value = rs.getObject(columnPosition);
+			// get the compiled field mapping
+			RowMapper<T> rowMapper = getRowMapper(rs, clazz);
 
-					BeanUtils.copyProperty(newInstance, fieldMap.get(i).getObjectFieldName(), value);
-				}
+			while (rs.next()) {
+				T element = rowMapper.mapRow(rs);
+				if (bTrackChanges)
+					new Orm(element).resetChanges();
 
-				elements.add((T) newInstance);
+				elements.add(element);
 			}
 		} catch (SQLException e) {
 			StackUtil.logStackTrace(log, e);
@@ -78,24 +106,65 @@ public class Orm {
 		return elements;
 	}
 
-	private String formatFieldName(String fieldName) {
-		String name = "";
+	/**
+	 * Map the rows to objects lazily, see RowIterator.
+	 * 
+	 * @param bTrackChanges
+	 *            remember the original values of the objects, so the update
+	 *            SQL only contains the changed columns
+	 */
+	public <T> RowIterator<T> iterateResultSet(ResultSet rs, Class<T> clazz, boolean bTrackChanges) {
+		return new RowIterator<T>(rs, clazz, bTrackChanges, null);
+	}
+
+	private static String formatFieldName(String fieldName) {
+		StringBuilder name = new StringBuilder(fieldName.length() + 8);
 		// joinTime, programRevisionName
 		char x = fieldName.charAt(0);
 		for (int i = 0; i < fieldName.length(); ++i) {
 			char k = fieldName.charAt(i);
 
 			if (isLowerCase(x) && isUpperCase(k))
-				name = name + "_";
+				name.append('_');
 
-			name = name + k;
+			name.append(k);
 			x = k;
 		}
 
-		return name;
+		return name.toString();
 	}
 
-	private void getAllField(Class clazz, List<Field> fieldList) {
+	/**
+	 * Get the mapper generated by EntityMapperProcessor, it's named
+	 * Entity_Mapper and located in the package of the entity.
+	 * 
+	 * @return null if it's absent
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> EntityMapper<T> getEntityMapper(Class<?> clazz) {
+		Object mapper = entityMapperCache.get(clazz);
+
+		if (mapper == null) {
+			mapper = NO_ENTITY_MAPPER;
+			try {
+				Class<?> mapperClass = Class.forName(clazz.getName() + EntityMapperProcessor.MAPPER_SUFFIX, true,
+						clazz.getClassLoader());
+				if (EntityMapper.class.isAssignableFrom(mapperClass))
+					mapper = mapperClass.getDeclaredConstructor().newInstance();
+			} catch (ClassNotFoundException e) {
+				// NOOP, use reflection
+			} catch (Exception e) {
+				StackUtil.logStackTrace(log, e);
+			}
+
+			entityMapperCache.putIfAbsent(clazz, mapper);
+		}
+
+		// the mapper is named after the class, so it maps T
+		return mapper == NO_ENTITY_MAPPER ? null : (EntityMapper<T>) mapper;
+	}
+
+	private static void getAllField(Class<?> clazz, List<Field> fieldList) {
 		if (clazz == Object.class) {
 			return;
 		} else {
@@ -104,9 +173,76 @@ public class Orm {
 		}
 	}
 
-	private ArrayList<FieldMap> getFieldMap(ResultSet rs, Class clazz) {
+	/**
+	 * Get the row mapper, it's compiled once per class and columns of the
+	 * result set, then reused.
+	 */
+	<T> RowMapper<T> getRowMapper(ResultSet rs, Class<T> clazz) throws SQLException, NoSuchMethodException,
+			IntrospectionException {
+		ResultSetMetaData metaData = rs.getMetaData();
+		String[] columnNames = new String[metaData.getColumnCount()];
+
+		for (int i = 0; i < columnNames.length; ++i) {
+			columnNames[i] = metaData.getColumnName(i + 1);
+		}
+
+		FieldMapKey key = new FieldMapKey(clazz, columnNames);
+		// the key includes the class, so the mapper maps T
+		@SuppressWarnings("unchecked")
+		RowMapper<T> rowMapper = (RowMapper<T>) rowMapperCache.get(key);
+
+		if (rowMapper == null) {
+			EntityMapper<T> generatedMapper = getEntityMapper(clazz);
+			if (generatedMapper != null)
+				rowMapper = new RowMapper<T>(generatedMapper, columnNames);
+			else
+				rowMapper = new RowMapper<T>(clazz, getFieldMap(columnNames, clazz));
+
+			if (rowMapperCache.size() < MAX_CACHED_ROW_MAPPER)
+				rowMapperCache.putIfAbsent(key, rowMapper);
+		}
+
+		return rowMapper;
+	}
+
+	private ArrayList<FieldMap> getFieldMap(String[] columnNames, Class<?> clazz) {
 		ArrayList<FieldMap> fieldMap = new ArrayList<FieldMap>();
 
+		// column name -> position, the first one wins
+		Map<String, Integer> columnMap = new HashMap<String, Integer>();
+		for (int i = columnNames.length - 1; i >= 0; --i) {
+			if (columnNames[i] != null)
+				columnMap.put(columnNames[i].toUpperCase(Locale.ENGLISH), i + 1);
+		}
+
+		List<String[]> fieldNameList = getFieldNameList(clazz);
+		for (int i = 0; i < fieldNameList.size(); i++) {
+			String[] fieldName = fieldNameList.get(i);
+			Integer column = columnMap.get(fieldName[1]);
+
+			if (column != null) {
+				FieldMap item = new FieldMap();
+				item.setObjectFieldName(fieldName[0]);
+				item.setTableFieldColumn(column);
+
+				fieldMap.add(item);
+			}
+		}
+
+		return fieldMap;
+	}
+
+	/**
+	 * Get {object field name, table field name} of the mapped fields of a
+	 * class, including the inherited ones.
+	 */
+	private List<String[]> getFieldNameList(Class<?> clazz) {
+		List<String[]> fieldNameList = fieldNameCache.get(clazz);
+		if (fieldNameList != null)
+			return fieldNameList;
+
+		fieldNameList = new ArrayList<String[]>();
+
 		List<Field> fieldList = new ArrayList<Field>();
 		getAllField(clazz, fieldList);
 		Field[] fields = fieldList.toArray(new Field[fieldList.size()]);
@@ -129,38 +265,13 @@ public class Orm {
 			 * fieldName: user-customed field name
 			 * </pre>
 			 */
-			FieldMap item = getFieldMap(rs, originalFieldName, fieldName);
-
-			if (item.getObjectFieldName() != null)
-				fieldMap.add(item);
+			String tableFieldName = formatFieldName(fieldName).toUpperCase(Locale.ENGLISH);
+			fieldNameList.add(new String[] { originalFieldName, tableFieldName });
 		}
 
-		return fieldMap;
-	}
-
-	private FieldMap getFieldMap(ResultSet rs, String originalFieldName, String objectFieldName) {
-		FieldMap item = new FieldMap();
-
-		String tableFieldName = formatFieldName(objectFieldName);
-		try {
-			ResultSetMetaData metaData;
-			metaData = rs.getMetaData();
-
-			for (int i = 1; i <= metaData.getColumnCount(); ++i) {
-				String fieldName = metaData.getColumnName(i);
-
-				if (tableFieldName.compareToIgnoreCase(fieldName) == 0) {
-					item.setTableFieldColumn(i);
-					item.setObjectFieldName(originalFieldName);
-
-					break;
-				}
-			}
-		} catch (SQLException e) {
-			StackUtil.logStackTrace(log, e);
-		}
+		fieldNameCache.putIfAbsent(clazz, fieldNameList);
 
-		return item;
+		return fieldNameList;
 	}
 
 	/**
@@ -195,14 +306,48 @@ public class Orm {
 	}
 
 	/**
-	 * Get key list and corresponding value list.
+	 * Get the column names of the object, in the order of getColumnValues().
 	 * 
-	 * @param fieldNameList
-	 *            field name list
-	 * @param fieldValueList
-	 *            value list
+	 * @return column names
 	 */
-	private void getKeyValueMap(ArrayList<String> fieldNameList, ArrayList<String> fieldValueList) {
+	public String[] getColumnNames() {
+		ArrayList<String> fieldNameList = new ArrayList<String>();
+		getColumnValueMap(fieldNameList, new ArrayList<Object>(), new ArrayList<Boolean>());
+
+		return fieldNameList.toArray(new String[fieldNameList.size()]);
+	}
+
+	/**
+	 * Get the raw values of the object, they could be bound to a prepared
+	 * statement directly.
+	 * 
+	 * @return column values
+	 */
+	public Object[] getColumnValues() {
+		ArrayList<Object> valueList = new ArrayList<Object>();
+		getColumnValueMap(new ArrayList<String>(), valueList, new ArrayList<Boolean>());
+
+		return valueList.toArray();
+	}
+
+	/**
+	 * Get column names, raw values and whether they're string columns.
+	 */
+	private void getColumnValueMap(ArrayList<String> fieldNameList, ArrayList<Object> valueList,
+			ArrayList<Boolean> stringList) {
+		if (entityMapper != null) {
+			String[] columnNames = entityMapper.getColumnNames();
+			Object[] values = entityMapper.getValues(object);
+
+			for (int i = 0; i < columnNames.length; i++) {
+				fieldNameList.add(columnNames[i]);
+				valueList.add(values[i]);
+				stringList.add(entityMapper.isStringColumn(i));
+			}
+
+			return;
+		}
+
 		Field[] fields = clazz.getDeclaredFields();
 
 		for (int iColCnt = 0; iColCnt < fields.length; iColCnt++) {
@@ -223,17 +368,9 @@ public class Orm {
 				if (kAnnotation != null && kAnnotation.fieldname().equals("") == false)
 					fieldName = kAnnotation.fieldname();
 
-				String strValue = "";
-				if (obj == null)
-					strValue = "NULL";
-				else {
-					if (kAnnotation == null || kAnnotation.type() == KType.STRING)
-						strValue = "'" + obj + "'";
-					else
-						strValue = "" + obj;
-				}
 				fieldNameList.add(fieldName);
-				fieldValueList.add(strValue);
+				valueList.add(obj);
+				stringList.add(kAnnotation == null || kAnnotation.type() == KType.STRING);
 			} catch (IllegalAccessException e) {
 				StackUtil.logStackTrace(log, e);
 			} catch (InvocationTargetException e) {
@@ -244,25 +381,186 @@ public class Orm {
 		}
 	}
 
+	/**
+	 * Get key list and corresponding value list.
+	 * 
+	 * @param fieldNameList
+	 *            field name list
+	 * @param fieldValueList
+	 *            value list
+	 */
+	private void getKeyValueMap(ArrayList<String> fieldNameList, ArrayList<String> fieldValueList) {
+		ArrayList<Object> valueList = new ArrayList<Object>();
+		ArrayList<Boolean> stringList = new ArrayList<Boolean>();
+
+		getColumnValueMap(fieldNameList, valueList, stringList);
+
+		for (int i = 0; i < valueList.size(); i++) {
+			fieldValueList.add(toSQLValue(valueList.get(i), stringList.get(i)));
+		}
+	}
+
+	/**
+	 * Get the column of the primary key of a class.
+	 * 
+	 * @return column name, null if the class has no id field
+	 */
+	static String getIdColumnName(Class<?> clazz) {
+		String idField = getIdFieldName(clazz);
+		if (idField == null)
+			return null;
+
+		List<Field> fieldList = new ArrayList<Field>();
+		getAllField(clazz, fieldList);
+
+		for (Field field : fieldList) {
+			if (!field.getName().equals(idField))
+				continue;
+
+			FieldInfo kAnnotation = field.getAnnotation(FieldInfo.class);
+			if (kAnnotation != null && kAnnotation.fieldname().equals("") == false)
+				return kAnnotation.fieldname();
+
+			break;
+		}
+
+		return formatFieldName(idField).toUpperCase(Locale.ENGLISH);
+	}
+
+	/**
+	 * Get the field of the primary key, it's marked by FieldInfo.id(), or
+	 * named id.
+	 * 
+	 * @return field name, null if absent
+	 */
+	static String getIdFieldName(Class<?> clazz) {
+		String idField = idFieldCache.get(clazz);
+
+		if (idField == null) {
+			List<Field> fieldList = new ArrayList<Field>();
+			getAllField(clazz, fieldList);
+
+			idField = "";
+			for (Field field : fieldList) {
+				FieldInfo kAnnotation = field.getAnnotation(FieldInfo.class);
+				if (kAnnotation != null && kAnnotation.id()) {
+					idField = field.getName();
+					break;
+				}
+
+				if (field.getName().equals("id") && idField.equals(""))
+					idField = field.getName();
+			}
+
+			idFieldCache.putIfAbsent(clazz, idField);
+		}
+
+		return idField.equals("") ? null : idField;
+	}
+
+	/**
+	 * Copy the properties of an object to a new instance of its class, the
+	 * values themselves aren't copied.
+	 * 
+	 * @return null if failed
+	 */
+	static <T> T copyObject(T object) {
+		try {
+			@SuppressWarnings("unchecked")
+			Constructor<T> constructor = (Constructor<T>) object.getClass().getDeclaredConstructor();
+			constructor.setAccessible(true);
+
+			T copy = constructor.newInstance();
+			PropertyUtils.copyProperties(copy, object);
+
+			return copy;
+		} catch (Exception e) {
+			StackUtil.logStackTrace(log, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Convert a column value to the type of the field by BeanUtils and set it,
+	 * the generated mappers fall back to it when the typed getter fails, as
+	 * RowMapper does.
+	 */
+	public static void copyColumn(Object object, String fieldName, Object value) throws SQLException {
+		try {
+			BeanUtils.copyProperty(object, fieldName, value);
+		} catch (IllegalAccessException e) {
+			throw new SQLException("failed to set " + fieldName + ":" + e);
+		} catch (InvocationTargetException e) {
+			throw new SQLException("failed to set " + fieldName + ":" + e.getTargetException());
+		}
+	}
+
+	/**
+	 * Assign the key generated by the database to the id field of the object.
+	 * 
+	 * @param key
+	 *            generated key, it's converted to the type of the field
+	 * @return false if the object has no id field
+	 */
+	public boolean setGeneratedKey(Object key) {
+		String idField = getIdFieldName(clazz);
+		if (idField == null)
+			return false;
+
+		try {
+			BeanUtils.setProperty(object, idField, key);
+		} catch (IllegalAccessException e) {
+			StackUtil.logStackTrace(log, e);
+			return false;
+		} catch (InvocationTargetException e) {
+			StackUtil.logStackTrace(log, e);
+			return false;
+		}
+
+		return true;
+	}
+
 	public String getTableName() {
 		return this.tableName;
 	}
 
+	/**
+	 * @return the table name of a class annotated by TableInfo, null if it's
+	 *         absent
+	 */
+	public static String getTableName(Class<?> clazz) {
+		TableInfo tableInfo = clazz.getAnnotation(TableInfo.class);
+
+		return tableInfo != null ? tableInfo.name() : null;
+	}
+
+	/**
+	 * Get SQL based on all fields, or only the changed fields if the object is
+	 * loaded in change-tracking mode.
+	 * 
+	 * @return SQL for update, "" if nothing changed
+	 */
 	public String getUpdateSQL() {
-		String sql = " SET ";
 		ArrayList<String> fieldNameList = new ArrayList<String>();
-		ArrayList<String> fieldValueList = new ArrayList<String>();
+		ArrayList<Object> valueList = new ArrayList<Object>();
+		ArrayList<Boolean> stringList = new ArrayList<Boolean>();
 
-		getKeyValueMap(fieldNameList, fieldValueList);
+		getColumnValueMap(fieldNameList, valueList, stringList);
+		Object[] snapshot = ChangeTracker.getSnapshot(object);
 
+		StringBuilder sql = new StringBuilder(" SET ");
+		boolean bFirst = true;
 		for (int i = 0; i < fieldNameList.size(); ++i) {
-			sql += fieldNameList.get(i) + "=" + fieldValueList.get(i) + ",";
-		}
+			if (snapshot != null && i < snapshot.length && isEqual(snapshot[i], valueList.get(i)))
+				continue;
 
-		// Remove tailing ,
-		sql = sql.substring(0, sql.length() - 1);
+			if (!bFirst)
+				sql.append(",");
+			sql.append(fieldNameList.get(i)).append("=").append(toSQLValue(valueList.get(i), stringList.get(i)));
+			bFirst = false;
+		}
 
-		return sql;
+		return bFirst ? "" : sql.toString();
 	}
 
 	/**
@@ -273,41 +571,77 @@ public class Orm {
 	 */
 	public String getUpdateSQL(String... toBeUpdatedFields) {
 		// convert object name to table field name
+		Set<String> fieldSet = new HashSet<String>();
 		for (int i = 0; i < toBeUpdatedFields.length; ++i) {
-			toBeUpdatedFields[i] = formatFieldName(toBeUpdatedFields[i]).toUpperCase();
+			fieldSet.add(formatFieldName(toBeUpdatedFields[i]).toUpperCase());
 		}
 
-		String sql = " SET ";
+		StringBuilder sql = new StringBuilder(" SET ");
 		ArrayList<String> fieldNameList = new ArrayList<String>();
 		ArrayList<String> fieldValueList = new ArrayList<String>();
 
 		getKeyValueMap(fieldNameList, fieldValueList);
 
 		for (int i = 0; i < fieldNameList.size(); ++i) {
-			for (String f : toBeUpdatedFields) {
-				if (fieldNameList.get(i).equals(f)) {
-					sql += fieldNameList.get(i) + "=" + fieldValueList.get(i) + ",";
-
-					break;
-				}
-			}
+			if (fieldSet.contains(fieldNameList.get(i)))
+				sql.append(fieldNameList.get(i)).append("=").append(fieldValueList.get(i)).append(",");
 		}
 
 		// Remove tailing ,
-		sql = sql.substring(0, sql.length() - 1);
+		sql.setLength(sql.length() - 1);
 
-		return sql;
+		return sql.toString();
+	}
+
+	/**
+	 * @return true if the object is loaded in change-tracking mode and any
+	 *         column is changed since then, or it isn't tracked
+	 */
+	public boolean isChanged() {
+		Object[] snapshot = ChangeTracker.getSnapshot(object);
+		if (snapshot == null)
+			return true;
+
+		Object[] values = getColumnValues();
+		for (int i = 0; i < values.length; i++) {
+			if (i >= snapshot.length || !isEqual(snapshot[i], values[i]))
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Remember the current values of the object as the original ones, it's
+	 * called after the object is loaded or updated in change-tracking mode.
+	 */
+	public void resetChanges() {
+		ChangeTracker.track(object, getColumnValues());
+	}
+
+	private static boolean isEqual(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
 	}
 
-	private boolean isLowerCase(char ch) {
+	private String toSQLValue(Object obj, boolean bString) {
+		if (obj == null)
+			return "NULL";
+
+		if (bString)
+			return "'" + obj + "'";
+		else
+			return "" + obj;
+	}
+
+	private static boolean isLowerCase(char ch) {
 		return ch >= 'a' && ch <= 'z';
 	}
 
-	private boolean isUpperCase(char ch) {
+	private static boolean isUpperCase(char ch) {
 		return ch >= 'A' && ch <= 'Z';
 	}
 
-	public class FieldMap {
+	public static class FieldMap {
 		private String objectFieldName;
 		private int tableFieldColumn;
 
@@ -327,4 +661,34 @@ public class Orm {
 			this.tableFieldColumn = tableFieldColumn;
 		}
 	}
+
+	/**
+	 * Key of the row mapper cache: the class and the column names of the
+	 * result set.
+	 */
+	private static final class FieldMapKey {
+		private final Class<?> clazz;
+		private final String[] columnNames;
+		private final int hash;
+
+		FieldMapKey(Class<?> clazz, String[] columnNames) {
+			this.clazz = clazz;
+			this.columnNames = columnNames;
+			this.hash = 31 * clazz.hashCode() + Arrays.hashCode(columnNames);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof FieldMapKey))
+				return false;
+
+			FieldMapKey key = (FieldMapKey) obj;
+			return clazz == key.clazz && Arrays.equals(columnNames, key.columnNames);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
 }
@@ -0,0 +1,211 @@
+package org.charry.lib.database_utility;
+
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.charry.lib.database_utility.util.StackUtil;
+
+/**
+ * Read a table in parallel by ranges of a numeric key, see
+ * DatabaseFactory.scanParallel().
+ *
+ * The range between MIN and MAX of the key is split into partitions of equal
+ * width, about partition rows each if the keys are evenly distributed. Each
+ * partition is read and mapped by a thread of the asynchronous executor of the
+ * alias on its own pooled connection, see DatabaseConfig.setAsyncConfig(),
+ * without the query cache. At most parallelism partitions are read ahead of
+ * the consumer, so about (parallelism + 1) * partition rows objects are held
+ * in memory.
+ *
+ * The objects are returned in the order of the partitions. A failed partition
+ * is logged, counted by getFailedCount() and skipped, so the client code must
+ * check it to know if the scan is complete. If the consumer stops early,
+ * close() cancels the partitions which aren't started.
+ *
+ * @author charry
+ *
+ */
+public final class PartitionedScan<T> implements Iterator<T>, Iterable<T> {
+	/**
+	 * Default rows of a partition.
+	 */
+	static final int DEFAULT_PARTITION_ROWS = 10000;
+	private static Log log = LogFactory.getLog(PartitionedScan.class);
+	private final DatabaseFactory factory;
+	private final Class<T> clazz;
+	private final String sql;
+	private final String lastSql;
+	// range i is [bounds[i], bounds[i + 1]), the last one includes its end
+	private final long[] bounds;
+	private final LinkedList<Future<List<T>>> inFlight = new LinkedList<Future<List<T>>>();
+	private int nextPartition = 0;
+	private Iterator<T> current = Collections.<T> emptyList().iterator();
+	private long rowCount = 0;
+	private int failedCount = 0;
+
+	PartitionedScan(DatabaseFactory factory, Class<T> clazz, String table, String keyColumn, int parallelism,
+			int partitionRows) {
+		this.factory = factory;
+		this.clazz = clazz;
+		this.sql = "SELECT * FROM " + table + " WHERE " + keyColumn + " >= ? AND " + keyColumn + " < ? ORDER BY "
+				+ keyColumn;
+		this.lastSql = "SELECT * FROM " + table + " WHERE " + keyColumn + " >= ? AND " + keyColumn
+				+ " <= ? ORDER BY " + keyColumn;
+
+		Long min = factory.getOptionalLong("SELECT MIN(" + keyColumn + ") FROM " + table);
+		Long max = factory.getOptionalLong("SELECT MAX(" + keyColumn + ") FROM " + table);
+		Long count = factory.getOptionalLong("SELECT COUNT(*) FROM " + table);
+
+		if (min == null || max == null || count == null) {
+			bounds = new long[0];
+			return;
+		}
+
+		long partitions = Math.max(parallelism, (count + partitionRows - 1) / Math.max(1, partitionRows));
+		bounds = splitRange(min.longValue(), max.longValue(), (int) Math.min(Integer.MAX_VALUE, partitions));
+
+		for (int i = 0; i < Math.max(1, parallelism); i++) {
+			submitNext();
+		}
+	}
+
+	/**
+	 * Split [min, max] into ranges of equal width.
+	 *
+	 * @return bounds of the ranges, range i is [bounds[i], bounds[i + 1]), the
+	 *         last one is [bounds[count - 1], max]
+	 */
+	static long[] splitRange(long min, long max, int partitions) {
+		// the width overflows a long if the keys span more than half of it
+		BigInteger first = BigInteger.valueOf(min);
+		BigInteger width = BigInteger.valueOf(max).subtract(first).add(BigInteger.ONE);
+		int count = (int) Math.max(1, Math.min(partitions, width.min(BigInteger.valueOf(Integer.MAX_VALUE))
+				.longValue()));
+		BigInteger[] quotient = width.divideAndRemainder(BigInteger.valueOf(count));
+		long[] bounds = new long[count + 1];
+
+		for (int i = 0; i < count; i++) {
+			bounds[i] = first.add(quotient[0].multiply(BigInteger.valueOf(i))).add(
+					BigInteger.valueOf(Math.min(i, quotient[1].longValue()))).longValue();
+		}
+		bounds[count] = max;
+
+		return bounds;
+	}
+
+	/**
+	 * Cancel the partitions which aren't started.
+	 */
+	public void close() {
+		for (Future<List<T>> partition : inFlight) {
+			partition.cancel(false);
+		}
+
+		inFlight.clear();
+		nextPartition = getPartitionCount();
+		current = Collections.<T> emptyList().iterator();
+	}
+
+	/**
+	 * @return partitions which failed and are skipped, the scan is incomplete
+	 *         if it's not 0
+	 */
+	public int getFailedCount() {
+		return failedCount;
+	}
+
+	public int getPartitionCount() {
+		return Math.max(0, bounds.length - 1);
+	}
+
+	/**
+	 * @return objects returned by next() so far
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	public boolean hasNext() {
+		while (!current.hasNext() && !inFlight.isEmpty()) {
+			Future<List<T>> partition = inFlight.removeFirst();
+			// keep the executor busy while this one is consumed
+			submitNext();
+
+			current = take(partition).iterator();
+		}
+
+		return current.hasNext();
+	}
+
+	public Iterator<T> iterator() {
+		return this;
+	}
+
+	public T next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+
+		rowCount++;
+		return current.next();
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	private void submitNext() {
+		if (nextPartition >= getPartitionCount())
+			return;
+
+		final boolean bLast = nextPartition == getPartitionCount() - 1;
+		final Long from = Long.valueOf(bounds[nextPartition]);
+		final Long to = Long.valueOf(bounds[nextPartition + 1]);
+		nextPartition++;
+
+		Callable<List<T>> task = new Callable<List<T>>() {
+			public List<T> call() {
+				List<T> list = factory.queryListUncached(clazz, bLast ? lastSql : sql, from, to);
+				if (list == null)
+					throw new IllegalStateException("failed to read the partition [" + from + ", " + to + ")");
+
+				return list;
+			}
+		};
+
+		try {
+			inFlight.add(factory.executeAsync(task));
+		} catch (RejectedExecutionException e) {
+			// the executor is full, it's read by the consumer
+			inFlight.add(new FutureTask<List<T>>(task));
+		}
+	}
+
+	private List<T> take(Future<List<T>> partition) {
+		// not started by the executor yet, read it here instead of waiting
+		if (partition instanceof FutureTask && !partition.isDone())
+			((FutureTask<List<T>>) partition).run();
+
+		try {
+			return partition.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			close();
+		} catch (ExecutionException e) {
+			failedCount++;
+			StackUtil.logStackTrace(log, e);
+		}
+
+		return Collections.emptyList();
+	}
+}
@@ -0,0 +1,266 @@
+package org.charry.lib.database_utility;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of query results of one database alias, see
+ * DatabaseConfig.setQueryCacheConfig().
+ *
+ * A result is tagged with the tables of its query. The writes through
+ * DatabaseFactory invalidate the results of the tables they touch, by bumping
+ * the version of the tables, so a stale result is dropped when it's read. The
+ * versions are taken before the query is executed, so a write which races with
+ * the query invalidates its result as well.
+ *
+ * The writes which don't go through DatabaseFactory, e.g. by the connection of
+ * getConnection(), aren't seen, call invalidate() after them. The thread
+ * holding the connection of getConnection() neither reads nor fills the cache,
+ * so the rows of its open transaction aren't shared.
+ *
+ * @author charry
+ *
+ */
+public final class QueryCache {
+	/**
+	 * Returned by get() if the result isn't cached.
+	 */
+	static final Object MISS = new Object();
+	private final int maxRows;
+	private final long ttl; // in milliseconds
+	private final LinkedHashMap<String, Entry> entryMap = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private final TableVersions tableVersions;
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+	private int totalRows = 0;
+
+	/**
+	 * @param maxRows
+	 *            max rows cached, a single value counts as one row
+	 * @param ttl
+	 *            time to live of a cached result, unit: second
+	 */
+	public QueryCache(int maxRows, int ttl) {
+		this(maxRows, ttl, new TableVersions());
+	}
+
+	/**
+	 * @param tableVersions
+	 *            write versions of the tables, shared with the entity cache
+	 */
+	QueryCache(int maxRows, int ttl, TableVersions tableVersions) {
+		this.maxRows = maxRows;
+		this.ttl = ttl * 1000L;
+		this.tableVersions = tableVersions;
+	}
+
+	/**
+	 * Build the cache key of a query.
+	 */
+	static String createKey(String kind, String sql, Object[] params) {
+		StringBuilder key = new StringBuilder(kind.length() + sql.length() + 32);
+		key.append(kind).append('\u0000').append(sql);
+
+		if (params != null) {
+			for (int i = 0; i < params.length; i++) {
+				key.append('\u0000');
+
+				Object param = params[i];
+				if (param == null)
+					key.append("null");
+				else if (param instanceof byte[])
+					key.append("byte[]:").append(Arrays.toString((byte[]) param));
+				else
+					key.append(param.getClass().getName()).append(':').append(param);
+			}
+		}
+
+		return key.toString();
+	}
+
+	/**
+	 * Get a cached result.
+	 *
+	 * @return MISS if it's absent, expired or invalidated
+	 */
+	Object get(String key) {
+		Entry entry;
+
+		synchronized (entryMap) {
+			entry = entryMap.get(key);
+
+			if (entry != null && !isValid(entry, System.currentTimeMillis())) {
+				remove(key);
+				entry = null;
+			}
+		}
+
+		if (entry == null) {
+			missCount.incrementAndGet();
+			return MISS;
+		}
+
+		hitCount.incrementAndGet();
+		return entry.value;
+	}
+
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return hits / (hits + misses), 0 if it's never read
+	 */
+	public double getHitRate() {
+		long hits = hitCount.get();
+		long total = hits + missCount.get();
+
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * @return count of the invalidations of the alias
+	 */
+	public long getInvalidationCount() {
+		return tableVersions.getInvalidationCount();
+	}
+
+	public int getMaxRows() {
+		return maxRows;
+	}
+
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	public int getSize() {
+		synchronized (entryMap) {
+			return entryMap.size();
+		}
+	}
+
+	public int getTotalRows() {
+		synchronized (entryMap) {
+			return totalRows;
+		}
+	}
+
+	/**
+	 * Take the versions of the tables, it must be called before the query is
+	 * executed and passed to put().
+	 */
+	long[] getVersions(String[] tables) {
+		return tableVersions.getVersions(tables);
+	}
+
+	/**
+	 * Drop the cached results of a table.
+	 *
+	 * @param table
+	 *            table name
+	 */
+	public void invalidate(String table) {
+		tableVersions.invalidate(table);
+	}
+
+	/**
+	 * Drop all cached results.
+	 */
+	public void invalidateAll() {
+		tableVersions.invalidateAll();
+
+		synchronized (entryMap) {
+			entryMap.clear();
+			totalRows = 0;
+		}
+	}
+
+	/**
+	 * Drop the cached results of the tables written by an SQL, all results are
+	 * dropped if the tables are unknown.
+	 *
+	 * @param sql
+	 *            SQL string of insert, update, delete, etc.
+	 */
+	public void invalidateBySql(String sql) {
+		tableVersions.invalidateBySql(sql);
+	}
+
+	/**
+	 * Cache a result.
+	 *
+	 * @param versions
+	 *            the versions taken by getVersions() before the query
+	 * @param rows
+	 *            rows of the result, a single value counts as one row
+	 */
+	void put(String key, String[] tables, long[] versions, Object value, int rows) {
+		rows = Math.max(1, rows);
+		if (rows > maxRows)
+			return;
+
+		Entry entry = new Entry(value, tables, versions, rows, System.currentTimeMillis() + ttl);
+
+		synchronized (entryMap) {
+			// written during the query
+			if (!isValid(entry, System.currentTimeMillis()))
+				return;
+
+			remove(key);
+			entryMap.put(key, entry);
+			totalRows += rows;
+
+			Iterator<Map.Entry<String, Entry>> iter = entryMap.entrySet().iterator();
+			while (totalRows > maxRows && iter.hasNext()) {
+				Entry eldest = iter.next().getValue();
+				iter.remove();
+				totalRows -= eldest.rows;
+				evictionCount.incrementAndGet();
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("size:%d, rows:%d, hits:%d, misses:%d, hit rate:%.2f, evictions:%d, invalidations:%d",
+				getSize(), getTotalRows(), getHitCount(), getMissCount(), getHitRate(), getEvictionCount(),
+				getInvalidationCount());
+	}
+
+	private boolean isValid(Entry entry, long lNow) {
+		return lNow <= entry.expireTime && tableVersions.isCurrent(entry.tables, entry.versions);
+	}
+
+	/**
+	 * Must be called with the lock of entryMap held.
+	 */
+	private void remove(String key) {
+		Entry old = entryMap.remove(key);
+		if (old != null)
+			totalRows -= old.rows;
+	}
+
+	private static final class Entry {
+		private final Object value;
+		private final String[] tables;
+		private final long[] versions;
+		private final int rows;
+		private final long expireTime;
+
+		Entry(Object value, String[] tables, long[] versions, int rows, long expireTime) {
+			this.value = value;
+			this.tables = tables;
+			this.versions = versions;
+			this.rows = rows;
+			this.expireTime = expireTime;
+		}
+	}
+}
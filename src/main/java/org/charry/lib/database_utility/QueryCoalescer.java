@@ -0,0 +1,138 @@
+package org.charry.lib.database_utility;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-flight execution of identical queries of one database alias, see
+ * DatabaseConfig.setCoalesceTimeout().
+ *
+ * The first caller of a query executes it, the callers of the same query
+ * arriving meanwhile wait for its result instead of hitting the database
+ * again. If the wait exceeds the timeout, the caller executes the query on its
+ * own.
+ *
+ * A caller may get the result of a query which is started slightly before it,
+ * so the calls which must read their own writes shouldn't be coalesced. The
+ * calls of the thread holding the connection of getConnection() are never
+ * coalesced.
+ *
+ * @author charry
+ *
+ */
+public final class QueryCoalescer {
+	private final ConcurrentMap<String, FutureTask<Object>> flightMap = new ConcurrentHashMap<String, FutureTask<Object>>();
+	private final long timeout; // in milliseconds
+	private final AtomicLong executionCount = new AtomicLong();
+	private final AtomicLong sharedCount = new AtomicLong();
+	private final AtomicLong timeoutCount = new AtomicLong();
+
+	/**
+	 * @param timeout
+	 *            max wait time for the result of another caller, unit:
+	 *            millisecond
+	 */
+	public QueryCoalescer(long timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Execute the loader, or wait for the in-flight execution of the same key.
+	 *
+	 * @param key
+	 *            identity of the query
+	 * @param loader
+	 *            it mustn't throw checked exceptions
+	 * @return result of the loader
+	 */
+	Object execute(String key, Callable<Object> loader) {
+		FutureTask<Object> task = new FutureTask<Object>(loader);
+		FutureTask<Object> inFlight = flightMap.putIfAbsent(key, task);
+
+		if (inFlight == null) {
+			executionCount.incrementAndGet();
+			try {
+				task.run();
+				return getResult(task);
+			} finally {
+				flightMap.remove(key, task);
+			}
+		}
+
+		try {
+			Object value = inFlight.get(timeout, TimeUnit.MILLISECONDS);
+			sharedCount.incrementAndGet();
+
+			return value;
+		} catch (TimeoutException e) {
+			timeoutCount.incrementAndGet();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			throw launderThrowable(e.getCause());
+		}
+
+		// execute on its own
+		executionCount.incrementAndGet();
+		task.run();
+		return getResult(task);
+	}
+
+	/**
+	 * @return count of the queries executed
+	 */
+	public long getExecutionCount() {
+		return executionCount.get();
+	}
+
+	/**
+	 * @return count of the callers served by the execution of another caller
+	 */
+	public long getSharedCount() {
+		return sharedCount.get();
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * @return count of the callers which timed out to wait
+	 */
+	public long getTimeoutCount() {
+		return timeoutCount.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("executions:%d, shared:%d, timeouts:%d", getExecutionCount(), getSharedCount(),
+				getTimeoutCount());
+	}
+
+	private Object getResult(FutureTask<Object> task) {
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			// the task is done, never happens
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			throw launderThrowable(e.getCause());
+		}
+	}
+
+	private static RuntimeException launderThrowable(Throwable t) {
+		if (t instanceof RuntimeException)
+			return (RuntimeException) t;
+		else if (t instanceof Error)
+			throw (Error) t;
+		else
+			return new IllegalStateException(t);
+	}
+}
@@ -0,0 +1,141 @@
+package org.charry.lib.database_utility;
+
+import java.sql.ResultSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.charry.lib.database_utility.util.StackUtil;
+
+/**
+ * Lazy mapping of the rows of a result set to objects, a row is read and
+ * mapped only when next() is called, so only the rows fetched by the driver are
+ * held in memory. With executeStreamQuery() it's one fetch size, see
+ * DatabaseConfig.getStreamFetchSize().
+ *
+ * The result set is closed when the last row is read, when an error occurs, or
+ * when close() is called, the client code must call close() if it stops before
+ * the end. An error is logged and ends the iteration, like toList().
+ *
+ * It could be iterated only once.
+ *
+ * @author charry
+ *
+ */
+public final class RowIterator<T> implements Iterator<T>, Iterable<T> {
+	private static Log log = LogFactory.getLog(RowIterator.class);
+	private ResultSet resultSet;
+	private final Class<T> clazz;
+	private final boolean bTrackChanges;
+	private final Runnable closer;
+	private RowMapper<T> rowMapper = null;
+	private T nextElement = null;
+	private boolean bFetched = false;
+	private boolean bClosed = false;
+	private long rowCount = 0;
+
+	/**
+	 * @param resultSet
+	 *            null means no row
+	 * @param closer
+	 *            releases the result set and its statement, null means
+	 *            closing the result set only
+	 */
+	RowIterator(ResultSet resultSet, Class<T> clazz, boolean bTrackChanges, Runnable closer) {
+		this.resultSet = resultSet;
+		this.clazz = clazz;
+		this.bTrackChanges = bTrackChanges;
+		this.closer = closer;
+
+		if (resultSet == null)
+			close();
+	}
+
+	/**
+	 * Stop the iteration and release the result set, it could be called more
+	 * than once.
+	 */
+	public void close() {
+		bFetched = true;
+		nextElement = null;
+
+		if (bClosed)
+			return;
+
+		bClosed = true;
+
+		if (closer != null) {
+			closer.run();
+		} else if (resultSet != null) {
+			try {
+				resultSet.close();
+			} catch (Exception e) {
+				StackUtil.logStackTrace(log, e);
+			}
+		}
+
+		resultSet = null;
+	}
+
+	/**
+	 * @return rows returned by next() so far
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	public boolean hasNext() {
+		if (!bFetched)
+			fetch();
+
+		return nextElement != null;
+	}
+
+	public boolean isClosed() {
+		return bClosed;
+	}
+
+	public Iterator<T> iterator() {
+		return this;
+	}
+
+	public T next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+
+		T element = nextElement;
+		nextElement = null;
+		bFetched = false;
+		rowCount++;
+
+		return element;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	private void fetch() {
+		bFetched = true;
+
+		try {
+			if (rowMapper == null)
+				rowMapper = new Orm().getRowMapper(resultSet, clazz);
+
+			if (!resultSet.next()) {
+				close();
+				return;
+			}
+
+			T element = rowMapper.mapRow(resultSet);
+			if (bTrackChanges)
+				new Orm(element).resetChanges();
+
+			nextElement = element;
+		} catch (Exception e) {
+			StackUtil.logStackTrace(log, e);
+			close();
+		}
+	}
+}
@@ -0,0 +1,211 @@
+package org.charry.lib.database_utility;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.beanutils.BeanUtils;
+import org.charry.lib.database_utility.Orm.FieldMap;
+
+/**
+ * Map a row of result set to an object, compiled once per class and columns
+ * of the result set.
+ * 
+ * The column is read by the typed getter which matches the type of the
+ * setter, and the setter is called directly, the JVM turns the repeated
+ * reflective calls into generated accessors. Types without a typed getter,
+ * and the values the typed getter fails to convert, such as a VARCHAR column
+ * of a numeric field, fall back to BeanUtils conversion.
+ * 
+ * If the entity has a mapper generated at compile time, the row is mapped by
+ * it without reflection.
+ * 
+ * @author charry
+ * 
+ */
+final class RowMapper<T> {
+	private static final int STRING = 0;
+	private static final int INT = 1;
+	private static final int LONG = 2;
+	private static final int DOUBLE = 3;
+	private static final int FLOAT = 4;
+	private static final int SHORT = 5;
+	private static final int BYTE = 6;
+	private static final int BOOLEAN = 7;
+	private static final int INTEGER_OBJECT = 8;
+	private static final int LONG_OBJECT = 9;
+	private static final int DOUBLE_OBJECT = 10;
+	private static final int OTHER = 11;
+	// the column is converted by BeanUtils
+	private static final Object OTHER_VALUE = new Object();
+	private static final Map<Class<?>, Integer> kindMap = new HashMap<Class<?>, Integer>();
+
+	static {
+		kindMap.put(String.class, STRING);
+		kindMap.put(int.class, INT);
+		kindMap.put(long.class, LONG);
+		kindMap.put(double.class, DOUBLE);
+		kindMap.put(float.class, FLOAT);
+		kindMap.put(short.class, SHORT);
+		kindMap.put(byte.class, BYTE);
+		kindMap.put(boolean.class, BOOLEAN);
+		kindMap.put(Integer.class, INTEGER_OBJECT);
+		kindMap.put(Long.class, LONG_OBJECT);
+		kindMap.put(Double.class, DOUBLE_OBJECT);
+	}
+
+	private final Constructor<T> constructor;
+	private final int[] columns;
+	private final int[] kinds;
+	private final Method[] setters;
+	private final String[] fieldNames;
+	private final EntityMapper<T> entityMapper;
+
+	/**
+	 * Use the mapper generated at compile time.
+	 * 
+	 * @param entityMapper
+	 *            generated mapper
+	 * @param columnNames
+	 *            column names of the result set
+	 */
+	RowMapper(EntityMapper<T> entityMapper, String[] columnNames) {
+		this.entityMapper = entityMapper;
+		this.constructor = null;
+		this.kinds = null;
+		this.setters = null;
+		this.fieldNames = null;
+
+		// column name -> position, the first one wins
+		Map<String, Integer> columnMap = new HashMap<String, Integer>();
+		for (int i = columnNames.length - 1; i >= 0; --i) {
+			if (columnNames[i] != null)
+				columnMap.put(columnNames[i].toUpperCase(Locale.ENGLISH), i + 1);
+		}
+
+		String[] readColumnNames = entityMapper.getReadColumnNames();
+		this.columns = new int[readColumnNames.length];
+		for (int i = 0; i < readColumnNames.length; i++) {
+			Integer column = columnMap.get(readColumnNames[i]);
+			this.columns[i] = column != null ? column.intValue() : 0;
+		}
+	}
+
+	RowMapper(Class<T> clazz, List<FieldMap> fieldMap) throws NoSuchMethodException, IntrospectionException {
+		this.entityMapper = null;
+		this.constructor = clazz.getDeclaredConstructor();
+		this.constructor.setAccessible(true);
+
+		Map<String, Method> setterMap = new HashMap<String, Method>();
+		BeanInfo beanInfo = Introspector.getBeanInfo(clazz);
+		PropertyDescriptor[] descriptors = beanInfo.getPropertyDescriptors();
+		for (int i = 0; i < descriptors.length; i++) {
+			if (descriptors[i].getWriteMethod() != null)
+				setterMap.put(descriptors[i].getName(), descriptors[i].getWriteMethod());
+		}
+
+		// the fields without setter are skipped, as BeanUtils does
+		List<FieldMap> mappedList = new ArrayList<FieldMap>();
+		for (int i = 0; i < fieldMap.size(); i++) {
+			if (setterMap.containsKey(fieldMap.get(i).getObjectFieldName()))
+				mappedList.add(fieldMap.get(i));
+		}
+
+		this.columns = new int[mappedList.size()];
+		this.kinds = new int[mappedList.size()];
+		this.setters = new Method[mappedList.size()];
+		this.fieldNames = new String[mappedList.size()];
+
+		for (int i = 0; i < mappedList.size(); i++) {
+			FieldMap item = mappedList.get(i);
+			Method setter = setterMap.get(item.getObjectFieldName());
+			Integer kind = kindMap.get(setter.getParameterTypes()[0]);
+
+			setter.setAccessible(true);
+			this.columns[i] = item.getTableFieldColumn();
+			this.kinds[i] = kind != null ? kind.intValue() : OTHER;
+			this.setters[i] = setter;
+			this.fieldNames[i] = item.getObjectFieldName();
+		}
+	}
+
+	/**
+	 * Create an object based on the current row.
+	 */
+	T mapRow(ResultSet rs) throws Exception {
+		if (entityMapper != null)
+			return entityMapper.mapRow(rs, columns);
+
+		T object = constructor.newInstance();
+
+		for (int i = 0; i < columns.length; i++) {
+			int column = columns[i];
+			Object value;
+
+			try {
+				value = getValue(rs, column, kinds[i]);
+			} catch (SQLException e) {
+				// not convertible by the driver, e.g. VARCHAR of a numeric field
+				value = OTHER_VALUE;
+			}
+
+			if (value == OTHER_VALUE) {
+				BeanUtils.copyProperty(object, fieldNames[i], rs.getObject(column));
+				continue;
+			}
+
+			if (rs.wasNull()) {
+				// keep the default value of primitive field
+				if (kinds[i] == STRING || kinds[i] >= INTEGER_OBJECT)
+					setters[i].invoke(object, (Object) null);
+
+				continue;
+			}
+
+			setters[i].invoke(object, value);
+		}
+
+		return object;
+	}
+
+	/**
+	 * Read a column by the typed getter of the kind.
+	 * 
+	 * @return OTHER_VALUE if the kind has no typed getter
+	 */
+	private static Object getValue(ResultSet rs, int column, int kind) throws SQLException {
+		switch (kind) {
+		case STRING:
+			return rs.getString(column);
+		case INT:
+		case INTEGER_OBJECT:
+			return rs.getInt(column);
+		case LONG:
+		case LONG_OBJECT:
+			return rs.getLong(column);
+		case DOUBLE:
+		case DOUBLE_OBJECT:
+			return rs.getDouble(column);
+		case FLOAT:
+			return rs.getFloat(column);
+		case SHORT:
+			return rs.getShort(column);
+		case BYTE:
+			return rs.getByte(column);
+		case BOOLEAN:
+			return rs.getBoolean(column);
+		default:
+			return OTHER_VALUE;
+		}
+	}
+}
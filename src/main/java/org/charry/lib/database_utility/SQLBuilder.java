@@ -1,11 +1,17 @@
 package org.charry.lib.database_utility;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 
 public class SQLBuilder {
+	// separator of the statements of the legacy insertOrUpdate()
+	static final String SQL_SEPARATOR = "^^^^";
 	private String targetTable = "";
 	private final ArrayList<String> fieldNameList = new ArrayList<String>();
 	private final ArrayList<String> fieldValueList = new ArrayList<String>();
+	private final ArrayList<Object[]> parameterList = new ArrayList<Object[]>();
 	private String whereCondition = "1=2";
 	private String sql = "";
 	private SqlType sqlType;
@@ -89,11 +95,11 @@ public class SQLBuilder {
 		String sqlCombo = sqlQuery;
 
 		this.insert().generateInsertSql();
-		sqlCombo += "^^^^" + this.sql;
+		sqlCombo += SQL_SEPARATOR + this.sql;
 
 		this.whereCondition = condition;
 		this.update().generateUpdateSql();
-		sqlCombo += "^^^^" + this.sql;
+		sqlCombo += SQL_SEPARATOR + this.sql;
 
 		this.sql = sqlCombo;
 		this.sqlType = SqlType.NONE;
@@ -101,6 +107,138 @@ public class SQLBuilder {
 		return this;
 	}
 
+	/**
+	 * Insert if record doesn't exist, else update, in one native statement of
+	 * the dialect, so it could be executed by executeUpdate() or in batch by
+	 * executeUpdateBatch():
+	 * 
+	 * <pre>
+	 * MySQL: INSERT ... ON DUPLICATE KEY UPDATE, it relies on the unique keys of the table
+	 * Oracle, SQL Server: MERGE ... ON (keys)
+	 * </pre>
+	 * 
+	 * For other databases, it falls back to insertOrUpdate(keys), which must
+	 * be executed by DatabaseFactory.insertOrUpdate().
+	 * 
+	 * @param dialect
+	 *            SQL dialect, see DatabaseFactory.getDialect()
+	 * @param keys
+	 *            keys to determine if record(s) exist, they're not updated
+	 * @return SQL string for insert or update
+	 * @throws IllegalArgumentException
+	 *             if no field is set, or no key is a field for MERGE
+	 */
+	public SQLBuilder insertOrUpdate(SQLDialect dialect, String... keys) {
+		if (fieldNameList.isEmpty())
+			throw new IllegalArgumentException("no field to insert or update, table:" + targetTable);
+
+		switch (dialect) {
+		case MYSQL:
+			generateMySQLUpsertSql(keys);
+			break;
+
+		case ORACLE:
+		case SQLSERVER:
+			generateMergeSql(dialect, keys);
+			break;
+
+		default:
+			return insertOrUpdate(keys);
+		}
+
+		this.sqlType = SqlType.NONE;
+
+		return this;
+	}
+
+	private boolean isKey(String fieldName, String... keys) {
+		for (String key : keys) {
+			if (key.equals(fieldName))
+				return true;
+		}
+
+		return false;
+	}
+
+	private void generateMySQLUpsertSql(String... keys) {
+		this.generateInsertSql();
+
+		StringBuilder sql = new StringBuilder(this.sql);
+		sql.append(" ON DUPLICATE KEY UPDATE ");
+
+		boolean bFirst = true;
+		for (int i = 0; i < fieldNameList.size(); ++i) {
+			String fname = fieldNameList.get(i);
+			if (isKey(fname, keys))
+				continue;
+
+			if (!bFirst)
+				sql.append(", ");
+			sql.append(fname).append("=VALUES(").append(fname).append(")");
+			bFirst = false;
+		}
+
+		// nothing to update, keep the record as it is
+		if (bFirst)
+			sql.append(fieldNameList.get(0)).append("=").append(fieldNameList.get(0));
+
+		this.sql = sql.toString();
+	}
+
+	private void generateMergeSql(SQLDialect dialect, String... keys) {
+		boolean bHasKey = false;
+		for (int i = 0; i < fieldNameList.size() && !bHasKey; ++i) {
+			bHasKey = isKey(fieldNameList.get(i), keys);
+		}
+
+		if (!bHasKey)
+			throw new IllegalArgumentException("none of the keys " + Arrays.toString(keys) + " is a field, table:"
+					+ targetTable);
+
+		StringBuilder source = new StringBuilder("SELECT ");
+		StringBuilder condition = new StringBuilder();
+		StringBuilder update = new StringBuilder();
+		StringBuilder insertFields = new StringBuilder();
+		StringBuilder insertValues = new StringBuilder();
+
+		for (int i = 0; i < fieldNameList.size(); ++i) {
+			String fname = fieldNameList.get(i);
+			String separator = i > 0 ? ", " : "";
+
+			source.append(separator).append(fieldValueList.get(i)).append(" AS ").append(fname);
+			insertFields.append(separator).append(fname);
+			insertValues.append(separator).append("S.").append(fname);
+
+			if (isKey(fname, keys)) {
+				if (condition.length() > 0)
+					condition.append(" AND ");
+				condition.append("T.").append(fname).append("=S.").append(fname);
+			} else {
+				if (update.length() > 0)
+					update.append(", ");
+				update.append("T.").append(fname).append("=S.").append(fname);
+			}
+		}
+
+		if (dialect == SQLDialect.ORACLE)
+			source.append(" FROM DUAL");
+
+		StringBuilder sql = new StringBuilder("MERGE INTO ");
+		sql.append(targetTable).append(" T USING (").append(source).append(") S ON (").append(condition).append(")");
+
+		if (update.length() > 0)
+			sql.append(" WHEN MATCHED THEN UPDATE SET ").append(update);
+
+		sql.append(" WHEN NOT MATCHED THEN INSERT (").append(insertFields).append(") VALUES (").append(insertValues)
+				.append(")");
+
+		// SQL Server requires MERGE to be terminated
+		if (dialect == SQLDialect.SQLSERVER)
+			sql.append(";");
+
+		this.sql = sql.toString();
+	}
+
 	/**
 	 * Set value of one field.
 	 * 
@@ -127,6 +265,7 @@ public class SQLBuilder {
 	public synchronized SQLBuilder reset() {
 		this.fieldNameList.clear();
 		this.fieldValueList.clear();
+		this.parameterList.clear();
 
 		this.whereCondition = "1=2";
 
@@ -156,6 +295,61 @@ public class SQLBuilder {
 		return this;
 	}
 
+	/**
+	 * Save objects of the same class by one parameterized SQL, the values of
+	 * each object are got by parameters(). It's executed in batch by
+	 * DatabaseFactory.saveObjects().
+	 * 
+	 * @param objects
+	 *            objects to save
+	 * @return this
+	 */
+	public SQLBuilder saveObjects(Collection<?> objects) {
+		this.parameterList.clear();
+		this.sql = "";
+		this.sqlType = SqlType.NONE;
+
+		if (objects.isEmpty())
+			return this;
+
+		Orm orm = new Orm(objects.iterator().next());
+		String tableName = "";
+		if (this.targetTable.equals("") == false)
+			tableName = this.targetTable;
+		else
+			tableName = orm.getTableName();
+
+		String[] columnNames = orm.getColumnNames();
+		StringBuilder sql = new StringBuilder("INSERT INTO ");
+		sql.append(tableName).append(" (");
+		for (int i = 0; i < columnNames.length; i++) {
+			if (i > 0)
+				sql.append(", ");
+			sql.append(columnNames[i]);
+		}
+		sql.append(") VALUES(");
+		for (int i = 0; i < columnNames.length; i++) {
+			sql.append(i > 0 ? ", ?" : "?");
+		}
+		sql.append(")");
+
+		for (Object object : objects) {
+			this.parameterList.add(new Orm(object).getColumnValues());
+		}
+
+		this.sql = sql.toString();
+
+		return this;
+	}
+
+	/**
+	 * @return parameters of the rows of saveObjects(), in the order of the
+	 *         objects
+	 */
+	public List<Object[]> parameters() {
+		return this.parameterList;
+	}
+
 	public String sql() {
 		switch (sqlType) {
 		case INSERT:
@@ -222,6 +416,9 @@ public class SQLBuilder {
 	}
 
 	/**
+	 * If the object is loaded in change-tracking mode, only the changed
+	 * columns are updated, and the SQL is empty if nothing changed.
+	 * 
 	 * @param object
 	 *            the object which is to be updated
 	 * @param where
@@ -236,8 +433,10 @@ public class SQLBuilder {
 		else
 			tableName = orm.getTableName();
 
-		String sql = "UPDATE " + tableName + orm.getUpdateSQL();
-		sql += " WHERE " + where;
+		String updateSql = orm.getUpdateSQL();
+		String sql = "";
+		if (updateSql.equals("") == false)
+			sql = "UPDATE " + tableName + updateSql + " WHERE " + where;
 
 		this.sql = sql;
 		this.sqlType = SqlType.NONE;
@@ -0,0 +1,31 @@
+package org.charry.lib.database_utility;
+
+/**
+ * SQL dialect of a database, it's detected from the connection string.
+ * 
+ * @author charry
+ * 
+ */
+public enum SQLDialect {
+	MYSQL, ORACLE, SQLSERVER, GENERIC;
+
+	/**
+	 * @param connectionString
+	 *            JDBC url
+	 * @return the dialect, GENERIC if it's unknown
+	 */
+	public static SQLDialect fromConnectionString(String connectionString) {
+		if (connectionString == null)
+			return GENERIC;
+
+		String url = connectionString.trim();
+		if (url.startsWith("jdbc:mysql:"))
+			return MYSQL;
+		else if (url.startsWith("jdbc:oracle:"))
+			return ORACLE;
+		else if (url.startsWith("jdbc:jtds:sqlserver:") || url.startsWith("jdbc:sqlserver:"))
+			return SQLSERVER;
+		else
+			return GENERIC;
+	}
+}
@@ -0,0 +1,135 @@
+package org.charry.lib.database_utility;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.charry.lib.database_utility.util.StackUtil;
+
+/**
+ * LRU cache of prepared statements of one pooled connection, so the hot SQL is
+ * parsed and planned by the server only once.
+ * 
+ * A statement is taken out of the cache while it's in use and put back when
+ * the result set is closed, so the same SQL could be opened twice on one
+ * connection. Not thread-safe, it's owned by the borrower of the connection.
+ * 
+ * @author charry
+ * 
+ */
+final class StatementCache {
+	private static Log log = LogFactory.getLog(StatementCache.class);
+	private static final String SCALAR_PREFIX = "S:";
+	private final Connection connection;
+	private final int maxSize;
+	private final LinkedHashMap<String, PreparedStatement> statementMap;
+
+	StatementCache(final Connection connection, final int maxSize) {
+		this.connection = connection;
+		this.maxSize = maxSize;
+		this.statementMap = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				if (size() <= StatementCache.this.maxSize)
+					return false;
+
+				closeQuietly(eldest.getValue());
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Take a statement from the cache, prepare a new one if absent.
+	 * 
+	 * @param sql
+	 *            SQL string with ? as placeholder
+	 * @param bReturnKeys
+	 *            true for insert/update whose generated keys are required
+	 * @return prepared statement, it must be given back by checkin()
+	 * @throws SQLException
+	 */
+	PreparedStatement checkout(String sql, boolean bReturnKeys) throws SQLException {
+		PreparedStatement stmt = statementMap.remove(key(sql, bReturnKeys));
+		if (stmt != null)
+			return stmt;
+
+		if (bReturnKeys)
+			return connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+		else
+			return connection.prepareStatement(sql, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+	}
+
+	/**
+	 * Take a statement of a single-value query from the cache, it's forward
+	 * only and limited to one row.
+	 * 
+	 * @param sql
+	 *            SQL string with ? as placeholder
+	 * @return prepared statement, it must be given back by checkinScalar()
+	 * @throws SQLException
+	 */
+	PreparedStatement checkoutScalar(String sql) throws SQLException {
+		PreparedStatement stmt = statementMap.remove(SCALAR_PREFIX + sql);
+		if (stmt != null)
+			return stmt;
+
+		stmt = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		stmt.setMaxRows(1);
+		stmt.setFetchSize(1);
+
+		return stmt;
+	}
+
+	/**
+	 * Put back a statement which is taken by checkoutScalar().
+	 */
+	void checkinScalar(String sql, PreparedStatement stmt) {
+		checkin(SCALAR_PREFIX + sql, stmt);
+	}
+
+	/**
+	 * Put back a statement which is taken by checkout().
+	 */
+	void checkin(String sql, boolean bReturnKeys, PreparedStatement stmt) {
+		checkin(key(sql, bReturnKeys), stmt);
+	}
+
+	private void checkin(String key, PreparedStatement stmt) {
+		if (maxSize <= 0) {
+			closeQuietly(stmt);
+			return;
+		}
+
+		try {
+			stmt.clearParameters();
+		} catch (SQLException e) {
+			closeQuietly(stmt);
+			return;
+		}
+
+		PreparedStatement old = statementMap.put(key, stmt);
+		if (old != null && old != stmt)
+			closeQuietly(old);
+	}
+
+	private static void closeQuietly(Statement stmt) {
+		try {
+			stmt.close();
+		} catch (Exception e) {
+			StackUtil.logStackTrace(log, e);
+		}
+	}
+
+	private static String key(String sql, boolean bReturnKeys) {
+		return (bReturnKeys ? "U:" : "Q:") + sql;
+	}
+}
@@ -0,0 +1,145 @@
+package org.charry.lib.database_utility;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Write versions of the tables of one database alias, shared by QueryCache and
+ * EntityCache.
+ *
+ * A cached value records the versions of its tables when it's loaded, a write
+ * bumps the versions of the tables it touches, so the value is stale if any
+ * version differs.
+ *
+ * @author charry
+ *
+ */
+final class TableVersions {
+	// a keyword following the table isn't its alias, e.g. FROM a JOIN b
+	private static final String ALIAS = "(?:\\s+(?:AS\\s+)?(?!(?:JOIN|INNER|LEFT|RIGHT|FULL|CROSS|OUTER|NATURAL|WHERE|ON"
+			+ "|USING|GROUP|ORDER|HAVING|LIMIT|OFFSET|FETCH|FOR|SET|VALUES|SELECT|UNION|INTERSECT|EXCEPT)\\b)\\w+)?";
+	private static final Pattern TABLE_PATTERN = Pattern.compile("\\b(?:FROM|JOIN|INTO|UPDATE|TABLE)\\s+([\\w.$`\"\\[\\]]+"
+			+ ALIAS + "(?:\\s*,\\s*[\\w.$`\"\\[\\]]+" + ALIAS + ")*)", Pattern.CASE_INSENSITIVE);
+	private final ConcurrentMap<String, AtomicLong> tableVersionMap = new ConcurrentHashMap<String, AtomicLong>();
+	private final AtomicLong globalVersion = new AtomicLong();
+	private final AtomicLong invalidationCount = new AtomicLong();
+
+	/**
+	 * Get the tables which are read or written by an SQL, the names are in
+	 * upper case without schema and quotes.
+	 *
+	 * @return table names, empty if it's unknown
+	 */
+	static String[] getTables(String sql) {
+		Set<String> tableSet = new LinkedHashSet<String>();
+		Matcher matcher = TABLE_PATTERN.matcher(sql);
+
+		while (matcher.find()) {
+			String[] items = matcher.group(1).split(",");
+
+			for (int i = 0; i < items.length; i++) {
+				String table = normalize(items[i].trim().split("\\s+")[0]);
+
+				// a sub query, e.g. FROM (SELECT ...)
+				if (table.length() > 0)
+					tableSet.add(table);
+			}
+		}
+
+		return tableSet.toArray(new String[tableSet.size()]);
+	}
+
+	/**
+	 * Get the table name in upper case without schema and quotes, e.g.
+	 * `db`.`user_info` is USER_INFO.
+	 */
+	static String normalize(String table) {
+		String name = table.trim();
+		name = name.substring(name.lastIndexOf('.') + 1).replaceAll("[`\"\\[\\]]", "");
+
+		return name.toUpperCase(Locale.ENGLISH);
+	}
+
+	long getInvalidationCount() {
+		return invalidationCount.get();
+	}
+
+	/**
+	 * Take the versions of the tables, it must be called before the value is
+	 * loaded.
+	 *
+	 * @param tables
+	 *            table names in upper case
+	 */
+	long[] getVersions(String[] tables) {
+		long[] versions = new long[tables.length + 1];
+
+		versions[0] = globalVersion.get();
+		for (int i = 0; i < tables.length; i++) {
+			versions[i + 1] = getTableVersion(tables[i]).get();
+		}
+
+		return versions;
+	}
+
+	void invalidate(String table) {
+		getTableVersion(normalize(table)).incrementAndGet();
+		invalidationCount.incrementAndGet();
+	}
+
+	void invalidateAll() {
+		globalVersion.incrementAndGet();
+		invalidationCount.incrementAndGet();
+	}
+
+	/**
+	 * Bump the versions of the tables written by an SQL, or all tables if they
+	 * are unknown.
+	 */
+	void invalidateBySql(String sql) {
+		String[] tables = getTables(sql);
+
+		if (tables.length == 0) {
+			invalidateAll();
+			return;
+		}
+
+		for (int i = 0; i < tables.length; i++) {
+			invalidate(tables[i]);
+		}
+	}
+
+	/**
+	 * @return true if no table is written since the versions are taken
+	 */
+	boolean isCurrent(String[] tables, long[] versions) {
+		if (versions[0] != globalVersion.get())
+			return false;
+
+		for (int i = 0; i < tables.length; i++) {
+			if (versions[i + 1] != getTableVersion(tables[i]).get())
+				return false;
+		}
+
+		return true;
+	}
+
+	private AtomicLong getTableVersion(String table) {
+		AtomicLong version = tableVersionMap.get(table);
+
+		if (version == null) {
+			AtomicLong newVersion = new AtomicLong();
+			version = tableVersionMap.putIfAbsent(table, newVersion);
+			if (version == null)
+				version = newVersion;
+		}
+
+		return version;
+	}
+}
@@ -0,0 +1,292 @@
+package org.charry.lib.database_utility;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.charry.lib.database_utility.util.StackUtil;
+
+/**
+ * Write-behind buffer of the inserts into one table, see
+ * DatabaseFactory.getWriteBehindBuffer().
+ *
+ * add() only queues the row, a background thread writes the queued rows by
+ * executeBatchInsert() when batch size rows are queued or the oldest one has
+ * waited for the flush interval, so a writer doesn't pay a round trip and a
+ * commit per row. When the queue is full, add() blocks until there's room.
+ *
+ * The rows aren't written yet when add() returns. The rows of the failed
+ * chunks of a flush are logged, counted by getFailedCount() and kept for
+ * drainFailedRows(), up to the queue size, so the client code could retry or
+ * save them; the ones beyond are counted by getLostCount(). close() writes
+ * the queued rows before it returns, add() doesn't accept rows since then.
+ * It's called by closeConnection() and at JVM shutdown.
+ *
+ * @author charry
+ *
+ */
+public final class WriteBehindBuffer {
+	private static Log log = LogFactory.getLog(WriteBehindBuffer.class);
+	// wakes up the flusher when the buffer is closed
+	private static final Object[] WAKE_UP = new Object[0];
+	private final DatabaseFactory factory;
+	private final String targetTable;
+	private final String[] fieldNames;
+	private final BlockingQueue<Object[]> queue;
+	private final BlockingQueue<Object[]> failedQueue;
+	private final int batchSize;
+	private final long flushInterval; // in milliseconds
+	private final Thread flusher;
+	// add() queues under the read lock, close() sets bClosed under the write
+	// lock, so no row is queued after close() has started draining
+	private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+	private volatile boolean bClosed = false;
+	private final AtomicLong addedCount = new AtomicLong();
+	private final AtomicLong writtenCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+	private final AtomicLong lostCount = new AtomicLong();
+	private final AtomicLong flushCount = new AtomicLong();
+
+	WriteBehindBuffer(DatabaseFactory factory, String alias, String targetTable, String[] fieldNames, int queueSize,
+			int batchSize, long flushInterval) {
+		this.factory = factory;
+		this.targetTable = targetTable;
+		this.fieldNames = fieldNames.clone();
+		this.queue = new ArrayBlockingQueue<Object[]>(queueSize);
+		this.failedQueue = new ArrayBlockingQueue<Object[]>(queueSize);
+		this.batchSize = batchSize;
+		this.flushInterval = flushInterval;
+
+		flusher = new Thread(new Runnable() {
+			public void run() {
+				flushLoop();
+			}
+		}, "db-write-behind-" + alias + "-" + targetTable);
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	/**
+	 * Queue a copy of a row, it blocks if the queue is full.
+	 *
+	 * @param values
+	 *            values of the row, in the order of the field names
+	 * @return false if the buffer is closed or the thread is interrupted
+	 */
+	public boolean add(final Object... values) {
+		if (values.length != fieldNames.length)
+			throw new IllegalArgumentException("expect " + fieldNames.length + " values, got " + values.length);
+
+		// the caller could reuse the array before it's flushed
+		Object[] row = values.clone();
+
+		try {
+			// wait in slices, so a writer blocked by a full queue lets close()
+			// in
+			boolean bQueued = false;
+			while (!bQueued) {
+				closeLock.readLock().lock();
+				try {
+					if (bClosed)
+						return false;
+
+					bQueued = queue.offer(row, 100, TimeUnit.MILLISECONDS);
+				} finally {
+					closeLock.readLock().unlock();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+
+		addedCount.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Stop accepting rows and write the queued ones, it could be called more
+	 * than once.
+	 */
+	public void close() {
+		closeLock.writeLock().lock();
+		try {
+			if (bClosed)
+				return;
+
+			bClosed = true;
+		} finally {
+			closeLock.writeLock().unlock();
+		}
+
+		queue.offer(WAKE_UP);
+
+		try {
+			flusher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Take the rows of the failed flushes, so they could be retried or saved.
+	 *
+	 * @param rows
+	 *            the rows are added to it
+	 * @return count of the rows taken
+	 */
+	public int drainFailedRows(Collection<? super Object[]> rows) {
+		return failedQueue.drainTo(rows);
+	}
+
+	public long getAddedCount() {
+		return addedCount.get();
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @return rows of the failed flushes
+	 */
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	/**
+	 * @return rows of the failed flushes which aren't kept for
+	 *         drainFailedRows() because too many are kept
+	 */
+	public long getLostCount() {
+		return lostCount.get();
+	}
+
+	public String[] getFieldNames() {
+		return fieldNames.clone();
+	}
+
+	public long getFlushCount() {
+		return flushCount.get();
+	}
+
+	public long getFlushInterval() {
+		return flushInterval;
+	}
+
+	/**
+	 * @return rows queued and not written yet
+	 */
+	public int getPendingCount() {
+		return queue.size();
+	}
+
+	public String getTargetTable() {
+		return targetTable;
+	}
+
+	public long getWrittenCount() {
+		return writtenCount.get();
+	}
+
+	public boolean isClosed() {
+		return bClosed;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("table:%s, added:%d, written:%d, failed:%d, lost:%d, pending:%d, flushes:%d",
+				targetTable, getAddedCount(), getWrittenCount(), getFailedCount(), getLostCount(), getPendingCount(),
+				getFlushCount());
+	}
+
+	private void flushLoop() {
+		List<Object[]> rows = new ArrayList<Object[]>(batchSize);
+		long deadline = 0;
+
+		while (true) {
+			boolean bEmpty = rows.isEmpty();
+
+			try {
+				long wait = bEmpty ? flushInterval : deadline - System.currentTimeMillis();
+				Object[] row = queue.poll(Math.max(0, wait), TimeUnit.MILLISECONDS);
+
+				if (row != null)
+					rows.add(row);
+			} catch (InterruptedException e) {
+				// only stops by close()
+			}
+
+			queue.drainTo(rows, batchSize - rows.size());
+			rows.remove(WAKE_UP);
+
+			// the oldest row waits for the flush interval at most
+			if (bEmpty && !rows.isEmpty())
+				deadline = System.currentTimeMillis() + flushInterval;
+
+			boolean bDrained = bClosed && queue.isEmpty();
+			if (!rows.isEmpty()
+					&& (rows.size() >= batchSize || System.currentTimeMillis() >= deadline || bDrained)) {
+				flush(rows);
+				rows.clear();
+			}
+
+			if (bDrained && rows.isEmpty())
+				break;
+		}
+	}
+
+	private void flush(List<Object[]> rows) {
+		BatchInsert batch = new BatchInsert(targetTable, fieldNames);
+		for (int i = 0; i < rows.size(); i++) {
+			batch.addRow(rows.get(i));
+		}
+
+		long written = 0;
+		List<Object[]> failedRows = new ArrayList<Object[]>();
+
+		try {
+			List<Integer> chunkRowList = new ArrayList<Integer>();
+			int[] rowCounts = factory.executeBatchInsert(batch, chunkRowList);
+			int fromRow = 0;
+
+			for (int i = 0; i < rowCounts.length; i++) {
+				int chunkRows = chunkRowList.get(i);
+
+				if (rowCounts[i] == Statement.EXECUTE_FAILED)
+					failedRows.addAll(rows.subList(fromRow, fromRow + chunkRows));
+				else
+					written += rowCounts[i];
+
+				fromRow += chunkRows;
+			}
+		} catch (Exception e) {
+			StackUtil.logStackTrace(log, e);
+			failedRows.clear();
+			failedRows.addAll(rows);
+		}
+
+		flushCount.incrementAndGet();
+		writtenCount.addAndGet(written);
+
+		if (!failedRows.isEmpty()) {
+			failedCount.addAndGet(failedRows.size());
+			log.error("write-behind flush failed, table:" + targetTable + ", rows:" + rows.size() + ", failed:"
+					+ failedRows.size());
+
+			for (int i = 0; i < failedRows.size(); i++) {
+				if (!failedQueue.offer(failedRows.get(i)))
+					lostCount.incrementAndGet();
+			}
+		}
+	}
+}
@@ -0,0 +1,337 @@
+package org.charry.lib.database_utility.annotation;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+import org.charry.lib.database_utility.annotation.FieldInfo.KType;
+
+/**
+ * Generate an EntityMapper named Entity_Mapper for each class annotated with
+ * TableInfo, so Orm doesn't need reflection for the entity.
+ * 
+ * It's registered in META-INF/services, javac runs it automatically when this
+ * library is on the classpath.
+ * 
+ * The rules are the same as Orm: the fields with FieldInfo(ignore = true) and
+ * the static ones are skipped, INSERT/UPDATE use the declared fields which
+ * have getter, reading uses all the fields which have setter, including the
+ * inherited ones.
+ * 
+ * @author charry
+ * 
+ */
+@SupportedAnnotationTypes("org.charry.lib.database_utility.annotation.TableInfo")
+public class EntityMapperProcessor extends AbstractProcessor {
+	public static final String MAPPER_SUFFIX = "_Mapper";
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		Set<? extends Element> elements = roundEnv.getElementsAnnotatedWith(TableInfo.class);
+
+		for (Element element : elements) {
+			if (element.getKind() != ElementKind.CLASS)
+				continue;
+
+			TypeElement type = (TypeElement) element;
+			if (type.getModifiers().contains(Modifier.ABSTRACT) || type.getNestingKind().isNested())
+				continue;
+
+			// the mapper creates the entity with new, Orm uses reflection without it
+			if (!hasNoArgConstructor(type)) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+						"no accessible no-arg constructor, mapper not generated, reflection is used", type);
+				continue;
+			}
+
+			try {
+				generate(type);
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+						"failed to generate mapper: " + e.getMessage(), type);
+			}
+		}
+
+		return false;
+	}
+
+	private void generate(TypeElement type) throws IOException {
+		String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+		String entityName = type.getSimpleName().toString();
+		String mapperName = entityName + MAPPER_SUFFIX;
+		String tableName = type.getAnnotation(TableInfo.class).name();
+
+		Set<String> getters = new HashSet<String>();
+		Set<String> setters = new HashSet<String>();
+		List<VariableElement> allFields = new ArrayList<VariableElement>();
+		collectMembers(type, getters, setters, allFields);
+
+		// INSERT/UPDATE: declared fields with getter
+		List<VariableElement> writeFields = new ArrayList<VariableElement>();
+		for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+			if (isMapped(field) && getters.contains(getterName(field)))
+				writeFields.add(field);
+		}
+
+		// reading: all fields with setter
+		List<VariableElement> readFields = new ArrayList<VariableElement>();
+		for (VariableElement field : allFields) {
+			if (isMapped(field) && setters.contains(setterName(field)))
+				readFields.add(field);
+		}
+
+		JavaFileObject file = processingEnv.getFiler().createSourceFile(packageName + "." + mapperName, type);
+		PrintWriter out = new PrintWriter(file.openWriter());
+		try {
+			if (packageName.length() > 0)
+				out.println("package " + packageName + ";");
+			out.println();
+			out.println("/**");
+			out.println(" * Generated by " + EntityMapperProcessor.class.getName() + ", do not edit.");
+			out.println(" */");
+			out.println("public final class " + mapperName + " implements org.charry.lib.database_utility.EntityMapper<"
+					+ entityName + "> {");
+
+			out.print("\tprivate static final String[] COLUMN_NAMES = {");
+			for (int i = 0; i < writeFields.size(); i++)
+				out.print((i > 0 ? ", " : " ") + quote(writeColumnName(writeFields.get(i))));
+			out.println(" };");
+
+			out.print("\tprivate static final String[] FIELD_NAMES = {");
+			for (int i = 0; i < writeFields.size(); i++)
+				out.print((i > 0 ? ", " : " ") + quote(writeFields.get(i).getSimpleName().toString()));
+			out.println(" };");
+
+			out.print("\tprivate static final boolean[] STRING_COLUMNS = {");
+			for (int i = 0; i < writeFields.size(); i++)
+				out.print((i > 0 ? ", " : " ") + isStringColumn(writeFields.get(i)));
+			out.println(" };");
+
+			out.print("\tprivate static final String[] READ_COLUMN_NAMES = {");
+			for (int i = 0; i < readFields.size(); i++)
+				out.print((i > 0 ? ", " : " ") + quote(readColumnName(readFields.get(i))));
+			out.println(" };");
+			out.println();
+
+			out.println("\tpublic String getTableName() {");
+			out.println("\t\treturn " + quote(tableName) + ";");
+			out.println("\t}");
+			out.println();
+			out.println("\tpublic String[] getColumnNames() {");
+			out.println("\t\treturn COLUMN_NAMES.clone();");
+			out.println("\t}");
+			out.println();
+			out.println("\tpublic String[] getFieldNames() {");
+			out.println("\t\treturn FIELD_NAMES.clone();");
+			out.println("\t}");
+			out.println();
+			out.println("\tpublic boolean isStringColumn(int index) {");
+			out.println("\t\treturn STRING_COLUMNS[index];");
+			out.println("\t}");
+			out.println();
+			out.println("\tpublic Object[] getValues(" + entityName + " object) {");
+			out.print("\t\treturn new Object[] {");
+			for (int i = 0; i < writeFields.size(); i++)
+				out.print((i > 0 ? ", " : " ") + "object." + getterName(writeFields.get(i)) + "()");
+			out.println(" };");
+			out.println("\t}");
+			out.println();
+			out.println("\tpublic String[] getReadColumnNames() {");
+			out.println("\t\treturn READ_COLUMN_NAMES.clone();");
+			out.println("\t}");
+			out.println();
+			out.println("\tpublic " + entityName + " mapRow(java.sql.ResultSet rs, int[] columns) throws java.sql.SQLException {");
+			out.println("\t\t" + entityName + " object = new " + entityName + "();");
+			out.println("\t\tint c;");
+			for (int i = 0; i < readFields.size(); i++) {
+				out.println("\t\tif ((c = columns[" + i + "]) > 0) {");
+				out.println("\t\t\t" + readStatement(readFields.get(i)));
+				out.println("\t\t}");
+			}
+			out.println("\t\treturn object;");
+			out.println("\t}");
+			out.println("}");
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Collect the accessor names and the fields of the class hierarchy, the
+	 * fields of subclass come first, as Orm does.
+	 */
+	private void collectMembers(TypeElement type, Set<String> getters, Set<String> setters,
+			List<VariableElement> fields) {
+		while (type != null && !type.getQualifiedName().toString().equals("java.lang.Object")) {
+			for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+				if (method.getModifiers().contains(Modifier.STATIC) || method.getModifiers().contains(Modifier.PRIVATE))
+					continue;
+
+				if (method.getParameters().isEmpty())
+					getters.add(method.getSimpleName().toString());
+				else if (method.getParameters().size() == 1)
+					setters.add(method.getSimpleName().toString());
+			}
+
+			fields.addAll(ElementFilter.fieldsIn(type.getEnclosedElements()));
+
+			TypeMirror superclass = type.getSuperclass();
+			if (superclass.getKind() != TypeKind.DECLARED)
+				break;
+
+			type = (TypeElement) ((DeclaredType) superclass).asElement();
+		}
+	}
+
+	private String capitalize(String name) {
+		return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+	}
+
+	private String formatFieldName(String fieldName) {
+		StringBuilder name = new StringBuilder(fieldName.length() + 8);
+		char x = fieldName.charAt(0);
+		for (int i = 0; i < fieldName.length(); ++i) {
+			char k = fieldName.charAt(i);
+
+			if (x >= 'a' && x <= 'z' && k >= 'A' && k <= 'Z')
+				name.append('_');
+
+			name.append(k);
+			x = k;
+		}
+
+		return name.toString();
+	}
+
+	private String getterName(VariableElement field) {
+		String prefix = field.asType().getKind() == TypeKind.BOOLEAN ? "is" : "get";
+
+		return prefix + capitalize(field.getSimpleName().toString());
+	}
+
+	/**
+	 * @return true if the mapper in the same package could call new on it
+	 */
+	private boolean hasNoArgConstructor(TypeElement type) {
+		List<ExecutableElement> constructors = ElementFilter.constructorsIn(type.getEnclosedElements());
+
+		for (ExecutableElement constructor : constructors) {
+			if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE))
+				return true;
+		}
+
+		return false;
+	}
+
+	private boolean isMapped(VariableElement field) {
+		if (field.getModifiers().contains(Modifier.STATIC))
+			return false;
+
+		FieldInfo fieldInfo = field.getAnnotation(FieldInfo.class);
+
+		return fieldInfo == null || fieldInfo.ignore() == false;
+	}
+
+	private boolean isStringColumn(VariableElement field) {
+		FieldInfo fieldInfo = field.getAnnotation(FieldInfo.class);
+
+		return fieldInfo == null || fieldInfo.type() == KType.STRING;
+	}
+
+	private String quote(String s) {
+		return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	private String readColumnName(VariableElement field) {
+		FieldInfo fieldInfo = field.getAnnotation(FieldInfo.class);
+		String name = field.getSimpleName().toString();
+
+		if (fieldInfo != null && fieldInfo.fieldname().equals("") == false)
+			name = fieldInfo.fieldname();
+
+		return formatFieldName(name).toUpperCase(Locale.ENGLISH);
+	}
+
+	/**
+	 * The statement to read the column c and set it to the field. A value the
+	 * typed getter can't convert, e.g. VARCHAR of a numeric field, is
+	 * converted by Orm.copyColumn(), as RowMapper does.
+	 */
+	private String readStatement(VariableElement field) {
+		String setter = "object." + setterName(field);
+		String fallback = "org.charry.lib.database_utility.Orm.copyColumn(object, "
+				+ quote(field.getSimpleName().toString()) + ", rs.getObject(c));";
+		TypeMirror fieldType = field.asType();
+		TypeKind kind = fieldType.getKind();
+
+		if (kind.isPrimitive()) {
+			String getter = "get" + capitalize(kind.name().toLowerCase(Locale.ENGLISH));
+			if (kind == TypeKind.CHAR)
+				return "String v = rs.getString(c); if (v != null && v.length() > 0) " + setter + "(v.charAt(0));";
+
+			return tryTyped(setter + "(rs." + getter + "(c));", fallback);
+		}
+
+		String typeName = fieldType.toString();
+		if (typeName.equals("java.lang.String"))
+			return setter + "(rs.getString(c));";
+		if (typeName.equals("java.lang.Integer"))
+			return tryTyped("int v = rs.getInt(c); " + setter + "(rs.wasNull() ? null : Integer.valueOf(v));",
+					fallback);
+		if (typeName.equals("java.lang.Long"))
+			return tryTyped("long v = rs.getLong(c); " + setter + "(rs.wasNull() ? null : Long.valueOf(v));",
+					fallback);
+		if (typeName.equals("java.lang.Double"))
+			return tryTyped("double v = rs.getDouble(c); " + setter + "(rs.wasNull() ? null : Double.valueOf(v));",
+					fallback);
+
+		// a value of another type, e.g. DECIMAL of a Long field, is converted
+		String erasure = processingEnv.getTypeUtils().erasure(fieldType).toString();
+		return "Object v = rs.getObject(c); if (v == null || v instanceof " + erasure + ") " + setter + "(("
+				+ typeName + ") v); else org.charry.lib.database_utility.Orm.copyColumn(object, "
+				+ quote(field.getSimpleName().toString()) + ", v);";
+	}
+
+	private String tryTyped(String statement, String fallback) {
+		return "try { " + statement + " } catch (java.sql.SQLException e) { " + fallback + " }";
+	}
+
+	private String setterName(VariableElement field) {
+		return "set" + capitalize(field.getSimpleName().toString());
+	}
+
+	private String writeColumnName(VariableElement field) {
+		FieldInfo fieldInfo = field.getAnnotation(FieldInfo.class);
+
+		if (fieldInfo != null && fieldInfo.fieldname().equals("") == false)
+			return fieldInfo.fieldname();
+
+		return formatFieldName(field.getSimpleName().toString()).toUpperCase(Locale.ENGLISH);
+	}
+}
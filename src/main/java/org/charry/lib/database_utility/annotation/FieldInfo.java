@@ -13,4 +13,12 @@ public @interface FieldInfo {
 	boolean ignore() default false;
 
 	String fieldname() default "";
+
+	/**
+	 * The primary key. It's looked up by DatabaseFactory.findById(), and the
+	 * key generated by the database is assigned back to it by
+	 * DatabaseFactory.saveObjects(). If no field is marked, the field named id
+	 * is used.
+	 */
+	boolean id() default false;
 }
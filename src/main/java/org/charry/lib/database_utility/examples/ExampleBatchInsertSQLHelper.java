@@ -1,15 +1,16 @@
 package org.charry.lib.database_utility.examples;
 
-import java.sql.SQLException;
-import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.charry.lib.database_utility.BatchInsert;
 import org.charry.lib.database_utility.DatabaseFactory;
-import org.charry.lib.database_utility.DatabaseFactory.ResultSetEx;
-import org.charry.lib.database_utility.util.BatchInsertSQLHelper;
-
 
+/**
+ * The rows once inserted by BatchInsertSQLHelper, which is deprecated, are
+ * inserted by BatchInsert.
+ */
 public class ExampleBatchInsertSQLHelper {
 	private static Log log = LogFactory
 			.getLog(ExampleBatchInsertSQLHelper.class);
@@ -20,15 +21,13 @@ public class ExampleBatchInsertSQLHelper {
 	}
 
 	private static void test1() {
-		BatchInsertSQLHelper helper = new BatchInsertSQLHelper();
-		helper.resetSQLCache().setTargetTable("test3");
+		BatchInsert batch = new BatchInsert("test3", "V1", "V2", "V3");
 
 		for (int i = 0; i < 10; i++) {
-			helper.setFieldStringValue("V1", "he,llo")
-					.setFieldStringValue("V2", "ss").setFieldValue("V3", 833);
+			batch.addRow("he,llo", "ss", 833);
 		}
 
-		log.info(helper);
-		DatabaseFactory.getInstance(DB_ALIAS).executeUpdate(helper.toString());
+		int[] rowCounts = DatabaseFactory.getInstance(DB_ALIAS).executeBatchInsert(batch);
+		log.info("rows:" + batch.getRowCount() + ", row counts:" + Arrays.toString(rowCounts));
 	}
 }
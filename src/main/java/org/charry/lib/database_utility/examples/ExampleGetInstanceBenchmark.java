@@ -0,0 +1,71 @@
+package org.charry.lib.database_utility.examples;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.charry.lib.database_utility.DatabaseConfig;
+import org.charry.lib.database_utility.DatabaseFactory;
+
+/**
+ * Contention benchmark of DatabaseFactory.getInstance(), from 1 to 64 threads.
+ *
+ * The pool of the alias is created with min size 0, so no database is needed.
+ */
+public class ExampleGetInstanceBenchmark {
+	private static Log log = LogFactory.getLog(ExampleGetInstanceBenchmark.class);
+	private static final String DB_ALIAS = "benchmark";
+	private static final int CALLS_PER_THREAD = 1000000;
+	// keep the JIT from dropping the calls
+	private static volatile int sink = 0;
+
+	public static void main(String s[]) throws InterruptedException {
+		DatabaseConfig config = new DatabaseConfig(DB_ALIAS, "test", "test", "jdbc:mysql://localhost/test",
+				"com.mysql.jdbc.Driver");
+		config.setPoolConfig(0, 10, 30000, 0, 0);
+
+		// warm up
+		run(4);
+
+		for (int threadCount = 1; threadCount <= 64; threadCount *= 2) {
+			long elapsed = run(threadCount);
+			long calls = (long) threadCount * CALLS_PER_THREAD;
+
+			log.info(String.format("threads:%d, calls:%d, elapsed:%d ms, throughput:%d calls/ms", threadCount,
+					calls, elapsed, calls / Math.max(1, elapsed)));
+		}
+
+		DatabaseFactory.closeAllConnections();
+	}
+
+	private static long run(int threadCount) throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threadCount);
+
+		for (int i = 0; i < threadCount; i++) {
+			new Thread() {
+				public void run() {
+					try {
+						int hash = 0;
+						start.await();
+						for (int j = 0; j < CALLS_PER_THREAD; j++) {
+							hash += DatabaseFactory.getInstance(DB_ALIAS).hashCode();
+						}
+						sink += hash;
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+
+		long t1 = System.currentTimeMillis();
+		start.countDown();
+		done.await();
+		long t2 = System.currentTimeMillis();
+
+		return t2 - t1;
+	}
+}
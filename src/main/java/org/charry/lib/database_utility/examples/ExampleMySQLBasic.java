@@ -1,6 +1,7 @@
 package org.charry.lib.database_utility.examples;
 
 import java.sql.SQLException;
+import java.util.concurrent.Future;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -15,6 +16,8 @@ public class ExampleMySQLBasic {
 	public static void main(String s[]) {
 		
 		testTrx();
+		testScalar();
+		testAsync();
 	}
 
 	private static void testTrx() {
@@ -32,4 +35,37 @@ public class ExampleMySQLBasic {
 		
 		rx.close();
 	}
+
+	private static void testScalar() {
+		DatabaseFactory db = DatabaseFactory.getInstance(DB_ALIAS);
+
+		boolean bFound = db.foundRecord("select 1 from catv where ID=?", 1);
+		long count = db.getLongValue("select count(*) from catv", 0);
+		String name = db.getOptionalString("select NAME from catv where ID=?", 1);
+
+		log.info("found:" + bFound + ", count:" + count + ", name:" + name);
+	}
+
+	private static void testAsync() {
+		DatabaseFactory db = DatabaseFactory.getInstance(DB_ALIAS);
+
+		// the two queries overlap
+		Future<ResultSetEx> rows = db.executeQueryAsync("select * from catv where ID>?", 0);
+		Future<ResultSetEx> count = db.executeQueryAsync("select count(*) from catv");
+
+		try {
+			ResultSetEx rx = rows.get();
+			while (rx.getResultSet().next()) {
+				System.out.println(rx.getResultSet().getString("ID"));
+			}
+			rx.close();
+
+			rx = count.get();
+			if (rx.getResultSet().next())
+				log.info("count:" + rx.getResultSet().getLong(1));
+			rx.close();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
 }
@@ -2,10 +2,14 @@ package org.charry.lib.database_utility.examples;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.charry.lib.database_utility.BatchInsert;
 import org.charry.lib.database_utility.DatabaseFactory;
+import org.charry.lib.database_utility.WriteBehindBuffer;
 import org.charry.lib.database_utility.DatabaseFactory.ResultSetEx;
 
 
@@ -16,6 +20,10 @@ public class ExampleMySQLBatch {
 	public static void main(String s[]) {
 		test1();
 		test2();
+		test3();
+		test4();
+		test5();
+		test6();
 	}
 
 	private static void test1() {
@@ -64,4 +72,97 @@ public class ExampleMySQLBatch {
 
 		System.out.println(t2 - t1);
 	}
+
+	private static void test3() {
+		long t1 = System.currentTimeMillis();
+
+		java.util.Date d = new java.util.Date();
+
+		BatchInsert batch = new BatchInsert("foo", "V").setMaxChunkRows(1000);
+		for (int i = 0; i < 100000; ++i) {
+			batch.addRow("" + d.getTime());
+		}
+
+		int[] rowCounts = DatabaseFactory.getInstance().executeBatchInsert(batch);
+		log.info("chunks:" + rowCounts.length);
+
+		long t2 = System.currentTimeMillis();
+
+		System.out.println(t2 - t1);
+	}
+
+	private static void test4() {
+		long t1 = System.currentTimeMillis();
+
+		final java.util.Date d = new java.util.Date();
+
+		// the rows are generated while they're streamed to the server
+		Iterator<Object[]> rows = new Iterator<Object[]>() {
+			private int i = 0;
+
+			public boolean hasNext() {
+				return i < 1000000;
+			}
+
+			public Object[] next() {
+				i++;
+				return new Object[] { "" + d.getTime() };
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+
+		long count = DatabaseFactory.getInstance(DB_ALIAS).bulkLoad("foo", new String[] { "V" }, rows);
+		log.info("loaded:" + count);
+
+		long t2 = System.currentTimeMillis();
+
+		System.out.println(t2 - t1);
+	}
+
+	private static void test5() {
+		long t1 = System.currentTimeMillis();
+
+		java.util.Date d = new java.util.Date();
+
+		// the inserts of test1(), written in batches by a background thread
+		WriteBehindBuffer buffer = DatabaseFactory.getInstance(DB_ALIAS).getWriteBehindBuffer("foo", "V");
+		for (int i = 0; i < 100000; ++i) {
+			buffer.add("" + d.getTime());
+		}
+
+		buffer.close();
+		log.info(buffer);
+
+		// the rows of the failed flushes are handed back
+		List<Object[]> failedRows = new ArrayList<Object[]>();
+		if (buffer.drainFailedRows(failedRows) > 0)
+			log.error("failed rows:" + failedRows.size() + ", lost:" + buffer.getLostCount());
+
+		long t2 = System.currentTimeMillis();
+
+		System.out.println(t2 - t1);
+	}
+
+	private static void test6() {
+		DatabaseFactory db = DatabaseFactory.getInstance(DB_ALIAS);
+		// keep a batch within 200ms, it's usually set in the config file
+		db.getConnectionPool().getConfig().setAdaptiveBatchConfig(10, 5000, 200);
+
+		java.util.Date d = new java.util.Date();
+
+		ArrayList<String> x = new ArrayList<String>();
+		for (int i = 0; i < 100; ++i) {
+			x.clear();
+			for (int j = 0; j < 10000; j++) {
+				x.add(String.format("insert into foo(V) values('%s')", d.getTime()));
+			}
+
+			db.executeUpdateBatch("foo", x, 1);
+		}
+
+		log.info(db.getBatchSizeControllers());
+	}
 }
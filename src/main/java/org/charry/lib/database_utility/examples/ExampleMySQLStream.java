@@ -0,0 +1,35 @@
+package org.charry.lib.database_utility.examples;
+
+import java.sql.SQLException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.charry.lib.database_utility.DatabaseFactory;
+import org.charry.lib.database_utility.DatabaseFactory.ResultSetEx;
+
+public class ExampleMySQLStream {
+	private static Log log = LogFactory.getLog(ExampleMySQLStream.class);
+	private static final String DB_ALIAS = "apple";
+
+	public static void main(String s[]) {
+		testStream();
+	}
+
+	private static void testStream() {
+		// rows are read one by one, the memory usage doesn't grow with the table
+		ResultSetEx rx = DatabaseFactory.getInstance(DB_ALIAS).executeStreamQuery("select * from foo where ID > ?", 0);
+
+		long count = 0;
+		try {
+			while (rx.getResultSet() != null && rx.getResultSet().next()) {
+				count++;
+			}
+		} catch (SQLException e) {
+			e.printStackTrace();
+		} finally {
+			rx.close();
+		}
+
+		log.info("rows:" + count);
+	}
+}
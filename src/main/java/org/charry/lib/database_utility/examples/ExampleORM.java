@@ -1,12 +1,15 @@
 package org.charry.lib.database_utility.examples;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.charry.lib.database_utility.DatabaseFactory;
+import org.charry.lib.database_utility.KeysetPager;
 import org.charry.lib.database_utility.Orm;
+import org.charry.lib.database_utility.PartitionedScan;
 import org.charry.lib.database_utility.DatabaseFactory.ResultSetEx;
 
 public class ExampleORM {
@@ -17,6 +20,9 @@ public class ExampleORM {
 		testObject2DB();
 		testDB2Object();
 		testDB2Object2();
+		testSaveObjects();
+		testPageByKey();
+		testScanParallel();
 	}
 
 	private static void testObject2DB() {
@@ -32,7 +38,7 @@ public class ExampleORM {
 
 		Orm x = new Orm();
 
-		List list = x.dumpResultSet(rx.getResultSet(), UserInfo.class);
+		List<UserInfo> list = x.dumpResultSet(rx.getResultSet(), UserInfo.class);
 
 		for (int i = 0; i < list.size(); ++i) {
 			UserInfo u = (UserInfo) list.get(i);
@@ -45,11 +51,52 @@ public class ExampleORM {
 		String sql = "select * from USER_INFO";
 		ResultSetEx rx = DatabaseFactory.getInstance().executeQuery(sql);
 
-		List list = rx.toList(UserInfo.class);
+		List<UserInfo> list = rx.toList(UserInfo.class);
 
 		for (int i = 0; i < list.size(); ++i) {
 			UserInfo u = (UserInfo) list.get(i);
 			log.info("result: " + u.getUser() + ", " + u.getPassword());
 		}
 	}
+
+	private static void testSaveObjects() {
+		log.info("-----saveObjects()-----");
+		List<UserInfo> list = new ArrayList<UserInfo>();
+		for (int i = 0; i < 10000; ++i) {
+			UserInfo u = new UserInfo();
+			u.setUser("Charry" + i);
+			u.setPassword("hellopass");
+			list.add(u);
+		}
+
+		int count = DatabaseFactory.getInstance(DB_ALIAS).saveObjects(list);
+		log.info("saved: " + count + ", last id: " + list.get(list.size() - 1).getId());
+	}
+
+	private static void testPageByKey() {
+		log.info("-----pageByKey()-----");
+		KeysetPager<UserInfo> pager = DatabaseFactory.getInstance(DB_ALIAS).pageByKey(UserInfo.class, "USER_INFO",
+				"ID", 1000, null);
+
+		for (List<UserInfo> page : pager) {
+			// save pager.getLastKey() to resume from it
+			log.info("page: " + pager.getPageCount() + ", rows: " + page.size() + ", last id: "
+					+ pager.getLastKey());
+		}
+
+		if (pager.isFailed())
+			log.error("scan stopped at id: " + pager.getLastKey());
+	}
+
+	private static void testScanParallel() {
+		log.info("-----scanParallel()-----");
+		PartitionedScan<UserInfo> scan = DatabaseFactory.getInstance(DB_ALIAS).scanParallel(UserInfo.class,
+				"USER_INFO", "ID", 4);
+
+		for (UserInfo u : scan) {
+			log.info("result: " + u.getId() + ", " + u.getUser());
+		}
+
+		log.info("partitions: " + scan.getPartitionCount() + ", rows: " + scan.getRowCount());
+	}
 }
@@ -0,0 +1,67 @@
+package org.charry.lib.database_utility.examples;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.beanutils.BeanUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.charry.lib.database_utility.DatabaseFactory;
+import org.charry.lib.database_utility.Orm;
+import org.charry.lib.database_utility.DatabaseFactory.ResultSetEx;
+
+/**
+ * Compare the compiled row mapper of Orm with the BeanUtils way of mapping,
+ * the same scrollable result set is mapped repeatedly.
+ */
+public class ExampleOrmBenchmark {
+	private static Log log = LogFactory.getLog(ExampleOrmBenchmark.class);
+	private static final String DB_ALIAS = "apple";
+	private static final int ROUNDS = 10000;
+
+	public static void main(String s[]) throws Exception {
+		ResultSetEx rx = DatabaseFactory.getInstance(DB_ALIAS).executeQuery("select * from USER_INFO");
+		ResultSet rs = rx.getResultSet();
+
+		try {
+			for (int warmup = 0; warmup < 2; warmup++) {
+				long t1 = System.currentTimeMillis();
+				long rows = 0;
+				for (int i = 0; i < ROUNDS; i++) {
+					rs.beforeFirst();
+					rows += beanUtilsMapping(rs).size();
+				}
+
+				long t2 = System.currentTimeMillis();
+				for (int i = 0; i < ROUNDS; i++) {
+					rs.beforeFirst();
+					rows += new Orm().dumpResultSet(rs, UserInfo.class).size();
+				}
+
+				long t3 = System.currentTimeMillis();
+				log.info(String.format("rows:%d, BeanUtils:%d ms, row mapper:%d ms", rows / 2, t2 - t1, t3 - t2));
+			}
+		} finally {
+			rx.close();
+		}
+	}
+
+	/**
+	 * The mapping of Orm before the row mapper.
+	 */
+	private static List<UserInfo> beanUtilsMapping(ResultSet rs) throws Exception {
+		List<UserInfo> list = new ArrayList<UserInfo>();
+
+		while (rs.next()) {
+			UserInfo u = UserInfo.class.getDeclaredConstructor().newInstance();
+			BeanUtils.copyProperty(u, "user", rs.getObject(rs.findColumn("USER")));
+			BeanUtils.copyProperty(u, "password", rs.getObject(rs.findColumn("PASSWD")));
+			BeanUtils.copyProperty(u, "joinTime", rs.getObject(rs.findColumn("JOIN_TIME")));
+
+			list.add(u);
+		}
+
+		return list;
+	}
+}
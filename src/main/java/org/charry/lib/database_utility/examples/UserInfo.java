@@ -6,7 +6,7 @@ import org.charry.lib.database_utility.annotation.FieldInfo.KType;
 
 @TableInfo(name = "USER_INFO")
 public class UserInfo {
-	@FieldInfo(type = KType.NONSTRING, ignore = true)
+	@FieldInfo(type = KType.NONSTRING, ignore = true, id = true)
 	private int id;
 
 	private String user;
@@ -9,8 +9,12 @@ import org.apache.commons.logging.LogFactory;
  * This only works for MySQL
  * 
  * @author charry
+ * @deprecated the values are inlined into one statement which could exceed the
+ *             max packet size, use BatchInsert and
+ *             DatabaseFactory.executeBatchInsert() instead
  * 
  */
+@Deprecated
 public final class BatchInsertSQLHelper {
 	private static Log log = LogFactory.getLog(BatchInsertSQLHelper.class);
 	private String targetTable = "";
@@ -46,39 +50,37 @@ public final class BatchInsertSQLHelper {
 	}
 
 	public String toString() {
-		String sql = "INSERT INTO " + targetTable + "(";
+		StringBuilder sql = new StringBuilder("INSERT INTO ");
+		sql.append(targetTable).append("(");
 
+		// the header ends when the first field name repeats
 		String f = fieldNameList.get(0);
-		boolean bReachHeaderEnd = false;
-		int headerCount = 0;
+		int headerCount = fieldNameList.size();
 		for (int i = 0; i < fieldNameList.size(); ++i) {
 			if (i != 0 && fieldNameList.get(i).equals(f)) {
-				bReachHeaderEnd = true;
-			}
-
-			if (bReachHeaderEnd) {
 				headerCount = i;
 				break;
-			} else
-				sql += fieldNameList.get(i) + ", ";
-		}
+			}
 
-		if (sql.endsWith(", "))
-			sql = sql.substring(0, sql.length() - 2);
+			if (i != 0)
+				sql.append(", ");
+			sql.append(fieldNameList.get(i));
+		}
 
-		sql += ") VALUES(";
+		sql.append(") VALUES(");
 
 		for (int i = 0; i < fieldValueList.size(); ++i) {
-			if (i != 0 && (i + 1) % headerCount == 0)
-				sql += fieldValueList.get(i) + "), (";
-			else
-				sql += fieldValueList.get(i) + ", ";
-		}
-		sql += ")";
+			if (i != 0) {
+				if (i % headerCount == 0)
+					sql.append("), (");
+				else
+					sql.append(", ");
+			}
 
-		if (sql.endsWith(", ()"))
-			sql = sql.substring(0, sql.length() - 4);
+			sql.append(fieldValueList.get(i));
+		}
+		sql.append(")");
 
-		return sql;
+		return sql.toString();
 	}
 }
@@ -1,35 +1,112 @@
 package org.charry.lib.database_utility.util;
 
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Retry interval of database reconnection, one backoff state per database
+ * alias, so a flapping database won't delay the recovery of the others.
+ *
+ * The interval is doubled on each failure up to the cap, half of it is
+ * randomized to avoid reconnecting in lockstep, and it's reset on success.
+ */
 public class SleepManager {
 	// unit: second
-	private static int sleepInterval = 0;
-	private static int current = 0;
-	private static int[] intervals = { 5, 10, 20, 30, 60, 120, 300, 600, 1200,
-			1800, 3600 };
+	private static final int MIN_INTERVAL = 5;
+	private static final int BASE_INTERVAL = 10;
+	private static volatile int sleepInterval = 0;
+	private static volatile int defaultMaxSleepInterval = 3600;
+	private static final ConcurrentMap<String, SleepManager> sleepManagerMap = new ConcurrentHashMap<String, SleepManager>();
+	private static final Random random = new Random();
+	private final String alias;
+	private int current = 0;
+	private int maxSleepInterval = 0;
+
+	/**
+	 * Get the backoff state of an alias, it's created if absent.
+	 *
+	 * @param alias
+	 *            database alias
+	 * @return the shared sleep manager of the alias
+	 */
+	public static SleepManager getInstance(String alias) {
+		SleepManager sleepManager = sleepManagerMap.get(alias);
+
+		if (sleepManager == null) {
+			SleepManager newSleepManager = new SleepManager(alias);
+			sleepManager = sleepManagerMap.putIfAbsent(alias, newSleepManager);
+			if (sleepManager == null)
+				sleepManager = newSleepManager;
+		}
+
+		return sleepManager;
+	}
+
+	/**
+	 * Set the default cap of the increased interval, it's used by the aliases
+	 * without their own cap.
+	 *
+	 * @param interval
+	 *            max sleep interval, unit: second
+	 */
+	public static void setDefaultMaxSleepInterval(int interval) {
+		defaultMaxSleepInterval = interval;
+	}
+
+	/**
+	 * Use a fixed interval for all aliases.
+	 *
+	 * @param interval
+	 *            sleep interval, unit: second, 0 means increased interval
+	 */
+	public static void setSleepInterval(int interval) {
+		sleepInterval = interval;
+	}
+
+	private SleepManager(String alias) {
+		this.alias = alias;
+	}
+
+	public String getAlias() {
+		return alias;
+	}
 
-	public static int getNextSleepInterval() {
+	public synchronized int getNextSleepInterval() {
 		int interval = 0;
 
 		if (sleepInterval != 0) {
 			interval = sleepInterval;
 		} else {
-			interval = intervals[current];
-			if (current < intervals.length - 1)
+			int cap = maxSleepInterval != 0 ? maxSleepInterval : defaultMaxSleepInterval;
+			long ceiling = Math.min((long) BASE_INTERVAL << current, (long) cap);
+
+			// equal jitter: half fixed, half random
+			int half = (int) (ceiling / 2);
+			interval = half + random.nextInt(half + 1);
+
+			if (ceiling < cap)
 				current++;
 		}
 
 		// prevent user from setting a unreasonable sleep interval
-		if (interval < 5)
-			interval = 5;
+		if (interval < MIN_INTERVAL)
+			interval = MIN_INTERVAL;
 
 		return interval;
 	}
 
-	public static void resetSleepTick() {
+	public synchronized void resetSleepTick() {
 		current = 0;
 	}
 
-	public static void setSleepInterval(int interval) {
-		sleepInterval = interval;
+	/**
+	 * Set the cap of the increased interval of this alias.
+	 *
+	 * @param interval
+	 *            max sleep interval, unit: second, 0 means the default one
+	 */
+	public synchronized void setMaxSleepInterval(int interval) {
+		this.maxSleepInterval = interval;
 	}
 }
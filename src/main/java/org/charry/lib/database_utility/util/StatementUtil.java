@@ -0,0 +1,28 @@
+package org.charry.lib.database_utility.util;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+
+public class StatementUtil {
+	/**
+	 * Bind the parameters to the placeholders of a prepared statement.
+	 * 
+	 * @param stmt
+	 *            prepared statement
+	 * @param params
+	 *            parameters, in the order of the placeholders
+	 * @throws SQLException
+	 */
+	public static void bindParameters(final PreparedStatement stmt, final Object... params) throws SQLException {
+		if (params == null)
+			return;
+
+		for (int i = 0; i < params.length; i++) {
+			if (params[i] == null)
+				stmt.setNull(i + 1, Types.VARCHAR);
+			else
+				stmt.setObject(i + 1, params[i]);
+		}
+	}
+}
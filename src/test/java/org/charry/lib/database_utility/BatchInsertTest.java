@@ -0,0 +1,88 @@
+package org.charry.lib.database_utility;
+
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the chunks of BatchInsert.
+ */
+public class BatchInsertTest 
+    extends TestCase
+{
+    public BatchInsertTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( BatchInsertTest.class );
+    }
+
+    public void testChunkSql()
+    {
+        BatchInsert batch = new BatchInsert( "test3", "V1", "V2" );
+
+        assertEquals( "INSERT INTO test3(V1, V2) VALUES (?, ?), (?, ?)", batch.getChunkSql( 2 ) );
+    }
+
+    public void testSplitByRows()
+    {
+        BatchInsert batch = new BatchInsert( "test3", "V1", "V2" ).setMaxChunkRows( 3 );
+        for ( int i = 0; i < 7; i++ )
+        {
+            batch.addRow( "v" + i, i );
+        }
+
+        List<Integer> chunkList = batch.splitChunks();
+        assertEquals( 3, chunkList.size() );
+        assertEquals( 3, chunkList.get( 0 ).intValue() );
+        assertEquals( 1, chunkList.get( 2 ).intValue() );
+
+        // further limited, e.g. by the adaptive batch size
+        assertEquals( 2, batch.getChunkRows( 0, 2 ) );
+        assertEquals( 3, batch.getChunkRows( 0, 10 ) );
+        assertEquals( 1, batch.getChunkRows( 6, 10 ) );
+        assertEquals( 0, batch.getChunkRows( 7, 10 ) );
+
+        Object[] params = batch.getParameters( 6, 1 );
+        assertEquals( "v6", params[0] );
+        assertEquals( 6, params[1] );
+    }
+
+    public void testSplitByBytes()
+    {
+        BatchInsert batch = new BatchInsert( "test3", "V1" ).setMaxChunkBytes( 1000 );
+        StringBuilder value = new StringBuilder();
+        for ( int i = 0; i < 100; i++ )
+        {
+            value.append( 'x' );
+        }
+
+        // about 300 bytes each, 3 rows per chunk
+        for ( int i = 0; i < 10; i++ )
+        {
+            batch.addRow( value.toString() );
+        }
+
+        List<Integer> chunkList = batch.splitChunks();
+        assertEquals( 4, chunkList.size() );
+        assertEquals( 3, chunkList.get( 0 ).intValue() );
+    }
+
+    public void testRowSize()
+    {
+        try
+        {
+            new BatchInsert( "test3", "V1", "V2" ).addRow( "v1" );
+            fail();
+        }
+        catch ( IllegalArgumentException e )
+        {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.charry.lib.database_utility;
+
+import java.sql.Statement;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the bookkeeping of BatchResult.
+ */
+public class BatchResultTest 
+    extends TestCase
+{
+    public BatchResultTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( BatchResultTest.class );
+    }
+
+    public void testFailedChunks()
+    {
+        BatchResult result = new BatchResult( 5 );
+        result.addChunk( 2 );
+        result.addChunk( 2 );
+        result.addChunk( 1 );
+        assertEquals( 3, result.getChunkCount() );
+
+        result.setUpdateCounts( 0, new int[] { 1, 1 } );
+        result.setUpdateCounts( 1, new int[] { 1, 0 } );
+        result.fail( 1, 1 );
+        result.setUpdateCounts( 2, new int[] { 2 } );
+
+        assertFalse( result.isSuccess() );
+        assertEquals( 1, result.getFailedChunks().size() );
+        assertEquals( 1, result.getFailedChunks().get( 0 ).intValue() );
+
+        int[] counts = result.getUpdateCounts();
+        assertEquals( 1, counts[0] );
+        assertEquals( Statement.EXECUTE_FAILED, counts[2] );
+        assertEquals( Statement.EXECUTE_FAILED, counts[3] );
+        assertEquals( 2, counts[4] );
+    }
+
+    public void testVariableChunks()
+    {
+        BatchResult result = new BatchResult( 6 );
+
+        assertEquals( 0, result.addChunk( 1 ) );
+        result.setUpdateCounts( 0, new int[] { 1 } );
+        assertEquals( 1, result.addChunk( 3 ) );
+        result.setUpdateCounts( 1, new int[] { 1, 1, 1 } );
+        assertEquals( 2, result.addChunk( 2 ) );
+        result.fail( 2, 2 );
+
+        assertEquals( 3, result.getBatchSize() );
+        assertEquals( 6, result.getChunkedCount() );
+        assertEquals( 2, result.getFailedChunks().get( 0 ).intValue() );
+
+        int[] counts = result.getUpdateCounts();
+        assertEquals( 1, counts[3] );
+        assertEquals( Statement.EXECUTE_FAILED, counts[4] );
+        assertEquals( Statement.EXECUTE_FAILED, counts[5] );
+    }
+}
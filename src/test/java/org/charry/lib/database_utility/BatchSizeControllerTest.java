@@ -0,0 +1,73 @@
+package org.charry.lib.database_utility;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the AIMD adjustment of BatchSizeController.
+ */
+public class BatchSizeControllerTest
+    extends TestCase
+{
+    public BatchSizeControllerTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( BatchSizeControllerTest.class );
+    }
+
+    public void testIncreaseAndDecrease()
+    {
+        // step is (2010 - 10) / 20 = 100
+        BatchSizeController controller = new BatchSizeController( 10, 2010, 100 );
+        assertEquals( 10, controller.getBatchSize() );
+
+        controller.record( 10, 50, false );
+        assertEquals( 110, controller.getBatchSize() );
+
+        // a partial batch doesn't grow the size
+        controller.record( 20, 50, false );
+        assertEquals( 110, controller.getBatchSize() );
+
+        for ( int i = 0; i < 30; i++ )
+        {
+            controller.record( controller.getBatchSize(), 50, false );
+        }
+        assertEquals( 2010, controller.getBatchSize() );
+
+        // slow
+        controller.record( 2010, 500, false );
+        assertEquals( 1005, controller.getBatchSize() );
+
+        // failed
+        controller.record( 1005, 10, true );
+        assertEquals( 502, controller.getBatchSize() );
+
+        for ( int i = 0; i < 10; i++ )
+        {
+            controller.record( controller.getBatchSize(), 500, false );
+        }
+        assertEquals( 10, controller.getBatchSize() );
+        assertEquals( 20, controller.getIncreaseCount() );
+        assertEquals( 8, controller.getDecreaseCount() );
+    }
+
+    public void testAverages()
+    {
+        BatchSizeController controller = new BatchSizeController( 100, 100, 1000 );
+
+        controller.record( 100, 100, false );
+        assertEquals( 100.0, controller.getAverageLatency(), 0.001 );
+        assertEquals( 1000.0, controller.getAverageThroughput(), 0.001 );
+
+        controller.record( 100, 200, false );
+        assertEquals( 120.0, controller.getAverageLatency(), 0.001 );
+        assertEquals( 900.0, controller.getAverageThroughput(), 0.001 );
+        assertEquals( 2, controller.getBatchCount() );
+        assertEquals( 100, controller.getBatchSize() );
+    }
+}
@@ -0,0 +1,93 @@
+package org.charry.lib.database_utility;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.charry.lib.database_utility.examples.UserInfo;
+
+/**
+ * Unit test for the eviction and invalidation of EntityCache.
+ */
+public class EntityCacheTest 
+    extends TestCase
+{
+    public EntityCacheTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( EntityCacheTest.class );
+    }
+
+    public void testPrimaryKey()
+    {
+        assertEquals( "USER_INFO", Orm.getTableName( UserInfo.class ) );
+        assertEquals( "ID", Orm.getIdColumnName( UserInfo.class ) );
+    }
+
+    public void testInvalidation()
+    {
+        TableVersions tableVersions = new TableVersions();
+        EntityCache cache = new EntityCache( 10, tableVersions );
+        UserInfo u = new UserInfo();
+
+        cache.put( "USER_INFO", 1, cache.getVersions( "USER_INFO" ), u );
+        assertSame( u, cache.get( "user_info", 1L ) );
+
+        tableVersions.invalidateBySql( "UPDATE USER_INFO SET PASSWD='x' WHERE ID=1" );
+        assertNull( cache.get( "USER_INFO", 1 ) );
+
+        // written while it's loaded
+        long[] versions = cache.getVersions( "USER_INFO" );
+        tableVersions.invalidate( "user_info" );
+        cache.put( "USER_INFO", 1, versions, u );
+        assertNull( cache.get( "USER_INFO", 1 ) );
+
+        assertEquals( 1, cache.getHitCount() );
+        assertEquals( 2, cache.getMissCount() );
+    }
+
+    public void testCopyObject()
+    {
+        UserInfo u = new UserInfo();
+        u.setId( 1 );
+        u.setUser( "charry" );
+
+        UserInfo copy = Orm.copyObject( u );
+        assertNotSame( u, copy );
+        assertEquals( 1, copy.getId() );
+        assertEquals( "charry", copy.getUser() );
+
+        copy.setUser( "kiwi" );
+        assertEquals( "charry", u.getUser() );
+    }
+
+    public void testQualifiedTableName()
+    {
+        TableVersions tableVersions = new TableVersions();
+        EntityCache cache = new EntityCache( 10, tableVersions );
+
+        cache.put( "db.user_info", 1, cache.getVersions( "db.user_info" ), "charry" );
+        assertEquals( "charry", cache.get( "`db`.`USER_INFO`", 1L ) );
+
+        tableVersions.invalidateBySql( "UPDATE user_info SET PASSWD='x' WHERE ID=1" );
+        assertNull( cache.get( "db.user_info", 1 ) );
+    }
+
+    public void testEviction()
+    {
+        EntityCache cache = new EntityCache( 2 );
+
+        cache.put( "T", 1, cache.getVersions( "T" ), "a" );
+        cache.put( "T", 2, cache.getVersions( "T" ), "b" );
+        cache.get( "T", 1 );
+        cache.put( "T", 3, cache.getVersions( "T" ), "c" );
+
+        assertNull( cache.get( "T", 2 ) );
+        assertEquals( "a", cache.get( "T", 1 ) );
+        assertEquals( 1, cache.getEvictionCount() );
+    }
+}
@@ -0,0 +1,130 @@
+package org.charry.lib.database_utility;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * An in-memory ResultSet for the tests which don't have a database.
+ */
+public class FakeResultSet implements InvocationHandler
+{
+    private final String[] columns;
+    private final Object[][] rows;
+    private int current = -1;
+    private boolean lastNull = false;
+
+    public static ResultSet create( String[] columns, Object[][] rows )
+    {
+        return (ResultSet) Proxy.newProxyInstance( FakeResultSet.class.getClassLoader(),
+            new Class<?>[] { ResultSet.class }, new FakeResultSet( columns, rows ) );
+    }
+
+    private FakeResultSet( String[] columns, Object[][] rows )
+    {
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    public Object invoke( Object proxy, Method method, Object[] args )
+        throws SQLException
+    {
+        String name = method.getName();
+
+        if ( name.equals( "next" ) )
+        {
+            return Boolean.valueOf( ++current < rows.length );
+        }
+        if ( name.equals( "getMetaData" ) )
+        {
+            return Proxy.newProxyInstance( FakeResultSet.class.getClassLoader(),
+                new Class<?>[] { ResultSetMetaData.class }, new InvocationHandler()
+                {
+                    public Object invoke( Object proxy, Method method, Object[] args )
+                    {
+                        String name = method.getName();
+                        if ( name.equals( "getColumnCount" ) )
+                        {
+                            return Integer.valueOf( columns.length );
+                        }
+                        if ( name.equals( "getColumnName" ) || name.equals( "getColumnLabel" ) )
+                        {
+                            return columns[( (Integer) args[0] ).intValue() - 1];
+                        }
+                        if ( name.equals( "getColumnType" ) )
+                        {
+                            return Integer.valueOf( Types.OTHER );
+                        }
+                        throw new UnsupportedOperationException( name );
+                    }
+                } );
+        }
+        if ( name.equals( "wasNull" ) )
+        {
+            return Boolean.valueOf( lastNull );
+        }
+        if ( name.equals( "close" ) )
+        {
+            return null;
+        }
+        if ( name.startsWith( "get" ) && args != null && args.length == 1 && args[0] instanceof Integer )
+        {
+            Object value = rows[current][( (Integer) args[0] ).intValue() - 1];
+            lastNull = value == null;
+            return convert( value, method.getReturnType() );
+        }
+        throw new UnsupportedOperationException( name );
+    }
+
+    private Object convert( Object value, Class<?> type )
+        throws SQLException
+    {
+        if ( type == Object.class )
+        {
+            return value;
+        }
+        if ( type == String.class )
+        {
+            return value == null ? null : value.toString();
+        }
+        // like a driver, a typed getter doesn't convert text
+        if ( value != null && !( value instanceof Number ) )
+        {
+            throw new SQLException( "cannot convert " + value + " to " + type );
+        }
+        Number number = value == null ? Integer.valueOf( 0 ) : (Number) value;
+        if ( type == int.class )
+        {
+            return Integer.valueOf( number.intValue() );
+        }
+        if ( type == long.class )
+        {
+            return Long.valueOf( number.longValue() );
+        }
+        if ( type == double.class )
+        {
+            return Double.valueOf( number.doubleValue() );
+        }
+        if ( type == float.class )
+        {
+            return Float.valueOf( number.floatValue() );
+        }
+        if ( type == short.class )
+        {
+            return Short.valueOf( number.shortValue() );
+        }
+        if ( type == byte.class )
+        {
+            return Byte.valueOf( number.byteValue() );
+        }
+        if ( type == boolean.class )
+        {
+            return Boolean.valueOf( number.intValue() != 0 );
+        }
+        return value;
+    }
+}
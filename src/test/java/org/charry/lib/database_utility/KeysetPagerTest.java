@@ -0,0 +1,36 @@
+package org.charry.lib.database_utility;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the page SQL of KeysetPager.
+ */
+public class KeysetPagerTest
+    extends TestCase
+{
+    public KeysetPagerTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( KeysetPagerTest.class );
+    }
+
+    public void testPageSql()
+    {
+        assertEquals( "SELECT * FROM USER_INFO ORDER BY ID LIMIT 100",
+            KeysetPager.getPageSql( SQLDialect.MYSQL, "USER_INFO", "ID", 100, true ) );
+        assertEquals( "SELECT * FROM USER_INFO WHERE ID > ? ORDER BY ID LIMIT 100",
+            KeysetPager.getPageSql( SQLDialect.MYSQL, "USER_INFO", "ID", 100, false ) );
+        assertEquals( "SELECT * FROM (SELECT * FROM USER_INFO WHERE ID > ? ORDER BY ID) WHERE ROWNUM <= 100",
+            KeysetPager.getPageSql( SQLDialect.ORACLE, "USER_INFO", "ID", 100, false ) );
+        assertEquals( "SELECT TOP 100 * FROM USER_INFO WHERE ID > ? ORDER BY ID",
+            KeysetPager.getPageSql( SQLDialect.SQLSERVER, "USER_INFO", "ID", 100, false ) );
+        assertEquals( "SELECT * FROM USER_INFO WHERE ID > ? ORDER BY ID FETCH FIRST 100 ROWS ONLY",
+            KeysetPager.getPageSql( SQLDialect.GENERIC, "USER_INFO", "ID", 100, false ) );
+    }
+}
@@ -0,0 +1,65 @@
+package org.charry.lib.database_utility;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the LOAD DATA encoding of LoadDataInputStream.
+ */
+public class LoadDataInputStreamTest 
+    extends TestCase
+{
+    public LoadDataInputStreamTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( LoadDataInputStreamTest.class );
+    }
+
+    private String readAll( List<Object[]> rows, int columnCount ) throws Exception
+    {
+        LoadDataInputStream in = new LoadDataInputStream( rows.iterator(), columnCount );
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        byte[] b = new byte[7];
+        int n;
+        while ( ( n = in.read( b, 0, b.length ) ) != -1 )
+        {
+            out.write( b, 0, n );
+        }
+
+        assertEquals( rows.size(), in.getRowCount() );
+
+        return out.toString( "UTF-8" );
+    }
+
+    public void testEncoding() throws Exception
+    {
+        List<Object[]> rows = new ArrayList<Object[]>();
+        rows.add( new Object[] { 1, "a\tb\\c\nd", null } );
+        rows.add( new Object[] { 2, "\u4e2d\u6587", Boolean.TRUE } );
+
+        assertEquals( "1\ta\\tb\\\\c\\nd\t\\N\n2\t\u4e2d\u6587\t1\n", readAll( rows, 3 ) );
+    }
+
+    public void testLargeStream() throws Exception
+    {
+        List<Object[]> rows = new ArrayList<Object[]>();
+        for ( int i = 0; i < 10000; i++ )
+        {
+            rows.add( new Object[] { i, "value" + i } );
+        }
+
+        String text = readAll( rows, 2 );
+        assertTrue( text.startsWith( "0\tvalue0\n1\tvalue1\n" ) );
+        assertTrue( text.endsWith( "9999\tvalue9999\n" ) );
+    }
+}
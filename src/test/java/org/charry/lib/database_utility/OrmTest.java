@@ -0,0 +1,122 @@
+package org.charry.lib.database_utility;
+
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.charry.lib.database_utility.examples.UserInfo;
+
+/**
+ * Unit test for the result set mapping of Orm.
+ */
+public class OrmTest 
+    extends TestCase
+{
+    private static final String[] COLUMNS = { "ID", "USER", "PASSWD", "JOIN_TIME", "AGE" };
+
+    public OrmTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( OrmTest.class );
+    }
+
+    public void testDumpResultSet()
+    {
+        Object[][] rows = { { 1, "charry", "pass1", "2010-01-01", 30 }, { 2, "kiwi", null, null, 40 } };
+
+        // the second round hits the cached mapping
+        for ( int round = 0; round < 2; round++ )
+        {
+            List<UserInfo> list = new Orm().dumpResultSet( FakeResultSet.create( COLUMNS, rows ), UserInfo.class );
+
+            assertEquals( 2, list.size() );
+            assertEquals( "charry", list.get( 0 ).getUser() );
+            assertEquals( "pass1", list.get( 0 ).getPassword() );
+            assertEquals( "2010-01-01", list.get( 0 ).getJoinTime() );
+            assertEquals( "kiwi", list.get( 1 ).getUser() );
+            assertNull( list.get( 1 ).getPassword() );
+            // ignored fields are not mapped
+            assertEquals( 0, list.get( 0 ).getId() );
+            assertEquals( 0, list.get( 1 ).getAge() );
+        }
+    }
+
+    public void testDumpResultSetWithOtherColumns()
+    {
+        Object[][] rows = { { "pass2", "olive" } };
+
+        List<UserInfo> list = new Orm().dumpResultSet( FakeResultSet.create( new String[] { "passwd", "user" }, rows ),
+            UserInfo.class );
+
+        assertEquals( 1, list.size() );
+        assertEquals( "olive", list.get( 0 ).getUser() );
+        assertEquals( "pass2", list.get( 0 ).getPassword() );
+        assertNull( list.get( 0 ).getJoinTime() );
+    }
+
+    public void testTypedColumns()
+    {
+        String[] columns = { "COUNT", "TOTAL", "RANK", "SCORE", "ACTIVE", "NAME" };
+        Object[][] rows = { { 3, 5000000000L, 7, 1.5, 1, "a" }, { null, null, null, null, 0, null } };
+
+        List<TypedBean> list = new Orm().dumpResultSet( FakeResultSet.create( columns, rows ), TypedBean.class );
+
+        assertEquals( 2, list.size() );
+        assertEquals( 3, list.get( 0 ).getCount() );
+        assertEquals( 5000000000L, list.get( 0 ).getTotal() );
+        assertEquals( Integer.valueOf( 7 ), list.get( 0 ).getRank() );
+        assertEquals( Double.valueOf( 1.5 ), list.get( 0 ).getScore() );
+        assertTrue( list.get( 0 ).isActive() );
+        assertEquals( "a", list.get( 0 ).getName() );
+
+        // null keeps the default of primitives and sets null to objects
+        assertEquals( 0, list.get( 1 ).getCount() );
+        assertNull( list.get( 1 ).getRank() );
+        assertNull( list.get( 1 ).getScore() );
+        assertFalse( list.get( 1 ).isActive() );
+        assertNull( list.get( 1 ).getName() );
+    }
+
+    public void testTextColumnOfNumericField()
+    {
+        String[] columns = { "COUNT", "TOTAL", "RANK", "NAME" };
+        Object[][] rows = { { "3", "5000000000", "7", "a" } };
+
+        List<TypedBean> list = new Orm().dumpResultSet( FakeResultSet.create( columns, rows ), TypedBean.class );
+
+        assertEquals( 1, list.size() );
+        assertEquals( 3, list.get( 0 ).getCount() );
+        assertEquals( 5000000000L, list.get( 0 ).getTotal() );
+        assertEquals( Integer.valueOf( 7 ), list.get( 0 ).getRank() );
+        assertEquals( "a", list.get( 0 ).getName() );
+    }
+
+    public void testChangeTracking()
+    {
+        Object[][] rows = { { 1, "charry", "pass1", "2010-01-01", 30 } };
+        List<UserInfo> list = new Orm().dumpResultSet( FakeResultSet.create( COLUMNS, rows ), UserInfo.class, true );
+        UserInfo u = list.get( 0 );
+
+        assertFalse( new Orm( u ).isChanged() );
+        assertEquals( "", new SQLBuilder().updateObject( u, "ID=1" ).sql() );
+
+        u.setPassword( "pass2" );
+        assertEquals( "UPDATE USER_INFO SET PASSWD='pass2' WHERE ID=1", new SQLBuilder().updateObject( u, "ID=1" ).sql() );
+
+        new Orm( u ).resetChanges();
+        assertFalse( new Orm( u ).isChanged() );
+
+        // untracked objects write all columns
+        UserInfo untracked = new UserInfo();
+        untracked.setUser( "kiwi" );
+        assertTrue( new Orm( untracked ).isChanged() );
+        assertEquals( "UPDATE USER_INFO SET USER='kiwi',PASSWD=NULL,JOIN_TIME=NULL WHERE ID=2",
+            new SQLBuilder().updateObject( untracked, "ID=2" ).sql() );
+    }
+}
@@ -0,0 +1,43 @@
+package org.charry.lib.database_utility;
+
+import java.util.Arrays;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the key ranges of PartitionedScan.
+ */
+public class PartitionedScanTest
+    extends TestCase
+{
+    public PartitionedScanTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( PartitionedScanTest.class );
+    }
+
+    public void testSplitRange()
+    {
+        assertEquals( "[1, 4, 7, 9, 10]", Arrays.toString( PartitionedScan.splitRange( 1, 10, 4 ) ) );
+        assertEquals( "[0, 25, 50, 75, 99]", Arrays.toString( PartitionedScan.splitRange( 0, 99, 4 ) ) );
+        // fewer keys than partitions
+        assertEquals( "[5, 6, 7, 7]", Arrays.toString( PartitionedScan.splitRange( 5, 7, 8 ) ) );
+        assertEquals( "[5, 5]", Arrays.toString( PartitionedScan.splitRange( 5, 5, 0 ) ) );
+    }
+
+    public void testSplitWideRange()
+    {
+        assertEquals( "[" + Long.MIN_VALUE + ", 0, " + Long.MAX_VALUE + "]", Arrays.toString( PartitionedScan
+            .splitRange( Long.MIN_VALUE, Long.MAX_VALUE, 2 ) ) );
+        assertEquals( "[1, " + ( Long.MAX_VALUE / 2 + 2 ) + ", " + Long.MAX_VALUE + "]", Arrays
+            .toString( PartitionedScan.splitRange( 1, Long.MAX_VALUE, 2 ) ) );
+        assertEquals( "[" + ( Long.MAX_VALUE - 1 ) + ", " + Long.MAX_VALUE + ", " + Long.MAX_VALUE + "]", Arrays
+            .toString( PartitionedScan.splitRange( Long.MAX_VALUE - 1, Long.MAX_VALUE, 4 ) ) );
+    }
+}
@@ -0,0 +1,103 @@
+package org.charry.lib.database_utility;
+
+import java.util.Arrays;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the eviction and invalidation of QueryCache.
+ */
+public class QueryCacheTest 
+    extends TestCase
+{
+    public QueryCacheTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( QueryCacheTest.class );
+    }
+
+    private void put( QueryCache cache, String key, String sql, Object value, int rows )
+    {
+        String[] tables = TableVersions.getTables( sql );
+        cache.put( key, tables, cache.getVersions( tables ), value, rows );
+    }
+
+    public void testGetTables()
+    {
+        assertEquals( Arrays.asList( "USER_INFO", "ORDERS" ), Arrays.asList( TableVersions
+            .getTables( "select * from db.user_info u join `orders` o on u.id=o.uid where u.id=?" ) ) );
+        assertEquals( Arrays.asList( "A", "B" ), Arrays.asList( TableVersions.getTables( "SELECT 1 FROM a x, b AS y" ) ) );
+        assertEquals( Arrays.asList( "FOO" ), Arrays.asList( TableVersions.getTables( "insert into foo(V) values(1)" ) ) );
+        assertEquals( Arrays.asList( "FOO" ), Arrays.asList( TableVersions.getTables( "UPDATE foo SET V=1" ) ) );
+        assertEquals( 0, TableVersions.getTables( "select 1" ).length );
+    }
+
+    public void testInvalidation()
+    {
+        QueryCache cache = new QueryCache( 100, 60 );
+        String sql = "select NAME from USER_INFO where ID=?";
+        String key = QueryCache.createKey( "S", sql, new Object[] { 1 } );
+
+        assertSame( QueryCache.MISS, cache.get( key ) );
+        put( cache, key, sql, "charry", 1 );
+        assertEquals( "charry", cache.get( key ) );
+
+        cache.invalidateBySql( "delete from orders" );
+        assertEquals( "charry", cache.get( key ) );
+
+        cache.invalidateBySql( "update user_info set NAME='kiwi' where ID=1" );
+        assertSame( QueryCache.MISS, cache.get( key ) );
+
+        assertEquals( 2, cache.getHitCount() );
+        assertEquals( 2, cache.getMissCount() );
+    }
+
+    public void testWriteDuringQuery()
+    {
+        QueryCache cache = new QueryCache( 100, 60 );
+        String sql = "select count(*) from foo";
+        String[] tables = TableVersions.getTables( sql );
+
+        long[] versions = cache.getVersions( tables );
+        cache.invalidate( "foo" );
+        cache.put( "k", tables, versions, 1L, 1 );
+
+        assertSame( QueryCache.MISS, cache.get( "k" ) );
+    }
+
+    public void testInvalidateQualifiedName()
+    {
+        QueryCache cache = new QueryCache( 100, 60 );
+        String sql = "select count(*) from user_info";
+
+        put( cache, "k", sql, 1L, 1 );
+        cache.invalidate( "`db`.`user_info`" );
+        assertSame( QueryCache.MISS, cache.get( "k" ) );
+
+        put( cache, "k", sql, 1L, 1 );
+        cache.invalidate( "[user_info]" );
+        assertSame( QueryCache.MISS, cache.get( "k" ) );
+    }
+
+    public void testEviction()
+    {
+        QueryCache cache = new QueryCache( 10, 60 );
+
+        put( cache, "a", "select * from foo", "a", 4 );
+        put( cache, "b", "select * from foo", "b", 4 );
+        cache.get( "a" );
+        put( cache, "c", "select * from foo", "c", 4 );
+
+        // b is the least recently used
+        assertSame( QueryCache.MISS, cache.get( "b" ) );
+        assertEquals( "a", cache.get( "a" ) );
+        assertEquals( 8, cache.getTotalRows() );
+        assertEquals( 1, cache.getEvictionCount() );
+    }
+}
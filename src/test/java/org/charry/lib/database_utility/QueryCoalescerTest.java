@@ -0,0 +1,87 @@
+package org.charry.lib.database_utility;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the single-flight execution of QueryCoalescer.
+ */
+public class QueryCoalescerTest 
+    extends TestCase
+{
+    public QueryCoalescerTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( QueryCoalescerTest.class );
+    }
+
+    private Callable<Object> slowLoader( final AtomicInteger calls, final long sleep )
+    {
+        return new Callable<Object>()
+        {
+            public Object call() throws InterruptedException
+            {
+                calls.incrementAndGet();
+                Thread.sleep( sleep );
+                return "value";
+            }
+        };
+    }
+
+    private int runConcurrently( final QueryCoalescer coalescer, final Callable<Object> loader, int threadCount )
+        throws InterruptedException
+    {
+        final CountDownLatch done = new CountDownLatch( threadCount );
+        final AtomicInteger results = new AtomicInteger();
+
+        for ( int i = 0; i < threadCount; i++ )
+        {
+            new Thread()
+            {
+                public void run()
+                {
+                    if ( "value".equals( coalescer.execute( "key", loader ) ) )
+                        results.incrementAndGet();
+                    done.countDown();
+                }
+            }.start();
+        }
+
+        done.await();
+
+        return results.get();
+    }
+
+    public void testShared() throws InterruptedException
+    {
+        QueryCoalescer coalescer = new QueryCoalescer( 5000 );
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals( 8, runConcurrently( coalescer, slowLoader( calls, 500 ), 8 ) );
+        assertEquals( 1, calls.get() );
+        assertEquals( 7, coalescer.getSharedCount() );
+
+        // the finished flight isn't reused
+        coalescer.execute( "key", slowLoader( calls, 0 ) );
+        assertEquals( 2, calls.get() );
+    }
+
+    public void testTimeout() throws InterruptedException
+    {
+        QueryCoalescer coalescer = new QueryCoalescer( 50 );
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals( 2, runConcurrently( coalescer, slowLoader( calls, 500 ), 2 ) );
+        assertEquals( 2, calls.get() );
+        assertEquals( 1, coalescer.getTimeoutCount() );
+    }
+}
@@ -0,0 +1,97 @@
+package org.charry.lib.database_utility;
+
+import java.util.NoSuchElementException;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.charry.lib.database_utility.examples.UserInfo;
+
+/**
+ * Unit test for the lazy row mapping of RowIterator.
+ */
+public class RowIteratorTest
+    extends TestCase
+{
+    private static final String[] COLUMNS = { "ID", "USER", "PASSWD", "JOIN_TIME", "AGE" };
+
+    public RowIteratorTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( RowIteratorTest.class );
+    }
+
+    public void testIterateToEnd()
+    {
+        Object[][] rows = { { 1, "charry", "pass1", "2010-01-01", 30 }, { 2, "kiwi", null, null, 40 } };
+        final int[] closeCount = { 0 };
+
+        RowIterator<UserInfo> iter = new RowIterator<UserInfo>( FakeResultSet.create( COLUMNS, rows ), UserInfo.class,
+            false, new Runnable()
+            {
+                public void run()
+                {
+                    closeCount[0]++;
+                }
+            } );
+
+        assertEquals( "charry", iter.next().getUser() );
+        assertFalse( iter.isClosed() );
+        assertTrue( iter.hasNext() );
+        assertEquals( "kiwi", iter.next().getUser() );
+        assertFalse( iter.hasNext() );
+        assertTrue( iter.isClosed() );
+        assertEquals( 2, iter.getRowCount() );
+
+        iter.close();
+        assertEquals( 1, closeCount[0] );
+
+        try
+        {
+            iter.next();
+            fail();
+        }
+        catch ( NoSuchElementException e )
+        {
+            // expected
+        }
+    }
+
+    public void testCloseEarly()
+    {
+        Object[][] rows = { { 1, "charry", "pass1", "2010-01-01", 30 }, { 2, "kiwi", null, null, 40 } };
+        final int[] closeCount = { 0 };
+
+        RowIterator<UserInfo> iter = new RowIterator<UserInfo>( FakeResultSet.create( COLUMNS, rows ), UserInfo.class,
+            true, new Runnable()
+            {
+                public void run()
+                {
+                    closeCount[0]++;
+                }
+            } );
+
+        for ( UserInfo u : iter )
+        {
+            assertFalse( new Orm( u ).isChanged() );
+            iter.close();
+        }
+
+        assertEquals( 1, iter.getRowCount() );
+        assertEquals( 1, closeCount[0] );
+        assertFalse( iter.hasNext() );
+    }
+
+    public void testNoResultSet()
+    {
+        RowIterator<UserInfo> iter = new RowIterator<UserInfo>( null, UserInfo.class, false, null );
+
+        assertTrue( iter.isClosed() );
+        assertFalse( iter.hasNext() );
+    }
+}
@@ -0,0 +1,112 @@
+package org.charry.lib.database_utility;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.charry.lib.database_utility.examples.UserInfo;
+
+/**
+ * Unit test for the SQL generated by SQLBuilder.
+ */
+public class SQLBuilderTest 
+    extends TestCase
+{
+    public SQLBuilderTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( SQLBuilderTest.class );
+    }
+
+    private SQLBuilder newBuilder()
+    {
+        return new SQLBuilder().table( "users" ).numeric( "id", 1 ).string( "name", "charry" ).numeric( "age", 30 );
+    }
+
+    public void testDialect()
+    {
+        assertEquals( SQLDialect.MYSQL, SQLDialect.fromConnectionString( "jdbc:mysql://localhost/test" ) );
+        assertEquals( SQLDialect.ORACLE, SQLDialect.fromConnectionString( "jdbc:oracle:thin:@localhost:1521:orcl" ) );
+        assertEquals( SQLDialect.SQLSERVER, SQLDialect.fromConnectionString( "jdbc:jtds:sqlserver://localhost/test" ) );
+        assertEquals( SQLDialect.GENERIC, SQLDialect.fromConnectionString( "jdbc:h2:mem:test" ) );
+    }
+
+    public void testMySQLUpsert()
+    {
+        String sql = newBuilder().insertOrUpdate( SQLDialect.MYSQL, "id" ).sql();
+
+        assertTrue( sql, sql.startsWith( "INSERT INTO users" ) );
+        assertTrue( sql, sql.endsWith( " ON DUPLICATE KEY UPDATE name=VALUES(name), age=VALUES(age)" ) );
+    }
+
+    public void testMergeUpsert()
+    {
+        String oracle = newBuilder().insertOrUpdate( SQLDialect.ORACLE, "id" ).sql();
+        assertEquals( "MERGE INTO users T USING (SELECT 1 AS id, 'charry' AS name, 30 AS age FROM DUAL) S ON (T.id=S.id)"
+            + " WHEN MATCHED THEN UPDATE SET T.name=S.name, T.age=S.age"
+            + " WHEN NOT MATCHED THEN INSERT (id, name, age) VALUES (S.id, S.name, S.age)", oracle );
+
+        String sqlServer = newBuilder().insertOrUpdate( SQLDialect.SQLSERVER, "id", "name" ).sql();
+        assertTrue( sqlServer, sqlServer.indexOf( "ON (T.id=S.id AND T.name=S.name)" ) > 0 );
+        assertTrue( sqlServer, sqlServer.endsWith( ";" ) );
+    }
+
+    public void testInvalidUpsert()
+    {
+        try
+        {
+            new SQLBuilder().table( "users" ).insertOrUpdate( SQLDialect.MYSQL, "id" );
+            fail();
+        }
+        catch ( IllegalArgumentException e )
+        {
+            // expected
+        }
+
+        try
+        {
+            newBuilder().insertOrUpdate( SQLDialect.ORACLE, "user_id" );
+            fail();
+        }
+        catch ( IllegalArgumentException e )
+        {
+            // expected
+        }
+    }
+
+    public void testLegacyUpsert()
+    {
+        String sql = newBuilder().insertOrUpdate( SQLDialect.GENERIC, "id" ).sql();
+
+        assertEquals( 3, sql.split( "\\^\\^\\^\\^" ).length );
+    }
+
+    public void testSaveObjects()
+    {
+        List<UserInfo> userList = new ArrayList<UserInfo>();
+        for ( int i = 0; i < 3; i++ )
+        {
+            UserInfo u = new UserInfo();
+            u.setUser( "user" + i );
+            u.setPassword( "pass" + i );
+            userList.add( u );
+        }
+
+        SQLBuilder builder = new SQLBuilder().saveObjects( userList );
+        assertEquals( "INSERT INTO USER_INFO (USER, PASSWD, JOIN_TIME) VALUES(?, ?, ?)", builder.sql() );
+        assertEquals( 3, builder.parameters().size() );
+        assertEquals( "user2", builder.parameters().get( 2 )[0] );
+        assertEquals( "pass2", builder.parameters().get( 2 )[1] );
+
+        // the generated key is converted to the type of the id field
+        assertTrue( new Orm( userList.get( 0 ) ).setGeneratedKey( Long.valueOf( 42 ) ) );
+        assertEquals( 42, userList.get( 0 ).getId() );
+    }
+}
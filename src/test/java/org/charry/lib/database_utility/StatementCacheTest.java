@@ -0,0 +1,124 @@
+package org.charry.lib.database_utility;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the LRU eviction and the checkout/checkin of StatementCache.
+ */
+public class StatementCacheTest
+    extends TestCase
+{
+    private final Set<Object> closedSet = new HashSet<Object>();
+
+    public StatementCacheTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( StatementCacheTest.class );
+    }
+
+    private PreparedStatement newStatement()
+    {
+        return (PreparedStatement) Proxy.newProxyInstance( getClass().getClassLoader(),
+            new Class<?>[] { PreparedStatement.class }, new InvocationHandler()
+            {
+                public Object invoke( Object proxy, Method method, Object[] args )
+                {
+                    if ( method.getName().equals( "close" ) )
+                    {
+                        closedSet.add( proxy );
+                    }
+                    if ( method.getName().equals( "hashCode" ) )
+                    {
+                        return Integer.valueOf( System.identityHashCode( proxy ) );
+                    }
+                    if ( method.getName().equals( "equals" ) )
+                    {
+                        return Boolean.valueOf( proxy == args[0] );
+                    }
+                    return null;
+                }
+            } );
+    }
+
+    private Connection newConnection()
+    {
+        return (Connection) Proxy.newProxyInstance( getClass().getClassLoader(), new Class<?>[] { Connection.class },
+            new InvocationHandler()
+            {
+                public Object invoke( Object proxy, Method method, Object[] args )
+                {
+                    if ( method.getName().equals( "prepareStatement" ) )
+                    {
+                        return newStatement();
+                    }
+                    return null;
+                }
+            } );
+    }
+
+    public void testEviction()
+        throws Exception
+    {
+        StatementCache cache = new StatementCache( newConnection(), 2 );
+
+        PreparedStatement a = cache.checkout( "A", false );
+        PreparedStatement b = cache.checkout( "B", false );
+        PreparedStatement c = cache.checkout( "C", false );
+        cache.checkin( "A", false, a );
+        cache.checkin( "B", false, b );
+        assertSame( a, cache.checkout( "A", false ) );
+        cache.checkin( "A", false, a );
+
+        // B is the least recently used one
+        cache.checkin( "C", false, c );
+        assertTrue( closedSet.contains( b ) );
+        assertFalse( closedSet.contains( a ) );
+        assertFalse( closedSet.contains( c ) );
+        assertNotSame( b, cache.checkout( "B", false ) );
+    }
+
+    public void testDoubleCheckout()
+        throws Exception
+    {
+        StatementCache cache = new StatementCache( newConnection(), 2 );
+
+        // the same SQL opened twice gets two statements
+        PreparedStatement first = cache.checkout( "A", false );
+        PreparedStatement second = cache.checkout( "A", false );
+        assertNotSame( first, second );
+
+        // only one is kept, the other is closed
+        cache.checkin( "A", false, first );
+        cache.checkin( "A", false, second );
+        assertTrue( closedSet.contains( first ) );
+        assertSame( second, cache.checkout( "A", false ) );
+
+        // the keys of queries and updates are apart
+        assertNotSame( second, cache.checkout( "A", true ) );
+    }
+
+    public void testNoCache()
+        throws Exception
+    {
+        StatementCache cache = new StatementCache( newConnection(), 0 );
+
+        PreparedStatement a = cache.checkout( "A", false );
+        cache.checkin( "A", false, a );
+        assertTrue( closedSet.contains( a ) );
+        assertNotSame( a, cache.checkout( "A", false ) );
+    }
+}
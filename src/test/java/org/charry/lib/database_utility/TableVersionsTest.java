@@ -0,0 +1,48 @@
+package org.charry.lib.database_utility;
+
+import java.util.Arrays;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the table names parsed by TableVersions.
+ */
+public class TableVersionsTest
+    extends TestCase
+{
+    public TableVersionsTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( TableVersionsTest.class );
+    }
+
+    public void testJoinWithoutAlias()
+    {
+        assertEquals( Arrays.asList( "A", "B" ),
+            Arrays.asList( TableVersions.getTables( "SELECT * FROM a JOIN b ON a.id=b.id" ) ) );
+        assertEquals( Arrays.asList( "A", "B" ),
+            Arrays.asList( TableVersions.getTables( "SELECT * FROM a LEFT JOIN b ON a.id=b.id" ) ) );
+        assertEquals( Arrays.asList( "A", "B", "C" ), Arrays.asList( TableVersions
+            .getTables( "select * from a inner join b using (id) natural join c" ) ) );
+    }
+
+    public void testKeywordAfterTable()
+    {
+        assertEquals( Arrays.asList( "A" ), Arrays.asList( TableVersions.getTables( "SELECT * FROM a WHERE id=1" ) ) );
+        assertEquals( Arrays.asList( "A" ), Arrays.asList( TableVersions.getTables( "select * from a order by id" ) ) );
+        assertEquals( Arrays.asList( "A", "B" ), Arrays.asList( TableVersions
+            .getTables( "SELECT id FROM a UNION SELECT id FROM b" ) ) );
+    }
+
+    public void testAlias()
+    {
+        assertEquals( Arrays.asList( "A", "B" ), Arrays.asList( TableVersions
+            .getTables( "SELECT * FROM a x LEFT JOIN b AS y ON x.id=y.id WHERE x.id=1" ) ) );
+    }
+}
@@ -0,0 +1,74 @@
+package org.charry.lib.database_utility;
+
+/**
+ * A bean with typed fields for the mapping tests.
+ */
+public class TypedBean
+{
+    private int count;
+    private long total;
+    private Integer rank;
+    private Double score;
+    private boolean active;
+    private String name;
+
+    public int getCount()
+    {
+        return count;
+    }
+
+    public void setCount( int count )
+    {
+        this.count = count;
+    }
+
+    public long getTotal()
+    {
+        return total;
+    }
+
+    public void setTotal( long total )
+    {
+        this.total = total;
+    }
+
+    public Integer getRank()
+    {
+        return rank;
+    }
+
+    public void setRank( Integer rank )
+    {
+        this.rank = rank;
+    }
+
+    public Double getScore()
+    {
+        return score;
+    }
+
+    public void setScore( Double score )
+    {
+        this.score = score;
+    }
+
+    public boolean isActive()
+    {
+        return active;
+    }
+
+    public void setActive( boolean active )
+    {
+        this.active = active;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public void setName( String name )
+    {
+        this.name = name;
+    }
+}
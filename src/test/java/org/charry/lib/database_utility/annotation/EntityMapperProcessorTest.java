@@ -0,0 +1,168 @@
+package org.charry.lib.database_utility.annotation;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.apache.commons.beanutils.PropertyUtils;
+import org.charry.lib.database_utility.EntityMapper;
+import org.charry.lib.database_utility.FakeResultSet;
+import org.charry.lib.database_utility.Orm;
+
+/**
+ * Compile an entity with the processor and check Orm picks up the mapper.
+ */
+public class EntityMapperProcessorTest 
+    extends TestCase
+{
+    private static final String SOURCE = "package sample;\n"
+        + "import org.charry.lib.database_utility.annotation.*;\n"
+        + "import org.charry.lib.database_utility.annotation.FieldInfo.KType;\n"
+        + "@TableInfo(name = \"ORDER_INFO\")\n"
+        + "public class OrderInfo {\n"
+        + "  @FieldInfo(ignore = true) private int id;\n"
+        + "  private String customerName;\n"
+        + "  @FieldInfo(type = KType.NONSTRING) private long amount;\n"
+        + "  @FieldInfo(fieldname = \"NOTE_TEXT\") private String note;\n"
+        + "  private Integer rank;\n"
+        + "  public int getId() { return id; }\n"
+        + "  public void setId(int id) { this.id = id; }\n"
+        + "  public String getCustomerName() { return customerName; }\n"
+        + "  public void setCustomerName(String customerName) { this.customerName = customerName; }\n"
+        + "  public long getAmount() { return amount; }\n"
+        + "  public void setAmount(long amount) { this.amount = amount; }\n"
+        + "  public String getNote() { return note; }\n"
+        + "  public void setNote(String note) { this.note = note; }\n"
+        + "  public Integer getRank() { return rank; }\n"
+        + "  public void setRank(Integer rank) { this.rank = rank; }\n"
+        + "}\n";
+
+    private static final String PRICE_SOURCE = "package sample;\n"
+        + "import org.charry.lib.database_utility.annotation.*;\n"
+        + "@TableInfo(name = \"PRICE_INFO\")\n"
+        + "public class PriceInfo {\n"
+        + "  private long amount;\n"
+        + "  private Integer rank;\n"
+        + "  private java.math.BigDecimal price;\n"
+        + "  public long getAmount() { return amount; }\n"
+        + "  public void setAmount(long amount) { this.amount = amount; }\n"
+        + "  public Integer getRank() { return rank; }\n"
+        + "  public void setRank(Integer rank) { this.rank = rank; }\n"
+        + "  public java.math.BigDecimal getPrice() { return price; }\n"
+        + "  public void setPrice(java.math.BigDecimal price) { this.price = price; }\n"
+        + "}\n";
+
+    public EntityMapperProcessorTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( EntityMapperProcessorTest.class );
+    }
+
+    /**
+     * Compile an entity of the sample package with the processor.
+     * 
+     * @return class loader of the compiled classes, null if no compiler
+     */
+    private ClassLoader compile( String className, String code )
+        throws Exception
+    {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if ( compiler == null )
+        {
+            // running on a JRE
+            return null;
+        }
+
+        File dir = new File( "target/processor-test" );
+        File sourceDir = new File( dir, "sample" );
+        sourceDir.mkdirs();
+        File source = new File( sourceDir, className + ".java" );
+        FileWriter writer = new FileWriter( source );
+        writer.write( code );
+        writer.close();
+
+        String classPath = System.getProperty( "surefire.test.class.path", System.getProperty( "java.class.path" ) );
+        int result = compiler.run( null, null, null, "-classpath", classPath, "-processor",
+                                   EntityMapperProcessor.class.getName(), "-d", dir.getPath(), "-s",
+                                   dir.getPath(), source.getPath() );
+        assertEquals( 0, result );
+        assertTrue( new File( sourceDir, className + "_Mapper.java" ).exists() );
+
+        return new URLClassLoader( new URL[] { dir.toURI().toURL() }, getClass().getClassLoader() );
+    }
+
+    public void testGeneratedMapper()
+        throws Exception
+    {
+        ClassLoader loader = compile( "OrderInfo", SOURCE );
+        if ( loader == null )
+        {
+            return;
+        }
+
+        Class<?> clazz = loader.loadClass( "sample.OrderInfo" );
+
+        EntityMapper<?> mapper =
+            (EntityMapper<?>) loader.loadClass( "sample.OrderInfo_Mapper" ).getDeclaredConstructor().newInstance();
+        assertEquals( "ORDER_INFO", mapper.getTableName() );
+        assertEquals( Arrays.asList( "CUSTOMER_NAME", "AMOUNT", "NOTE_TEXT", "RANK" ),
+                      Arrays.asList( mapper.getColumnNames() ) );
+
+        // write path
+        Object order = clazz.getDeclaredConstructor().newInstance();
+        PropertyUtils.setSimpleProperty( order, "customerName", "bob" );
+        PropertyUtils.setSimpleProperty( order, "amount", Long.valueOf( 12 ) );
+        assertEquals( " (CUSTOMER_NAME, AMOUNT, NOTE_TEXT, RANK) VALUES('bob', 12, NULL, NULL)",
+                      new Orm( order ).getInsertSQL() );
+
+        // read path
+        String[] columns = { "ID", "CUSTOMER_NAME", "AMOUNT", "NOTE_TEXT", "RANK" };
+        Object[][] rows = { { 5, "alice", 99L, "n", null } };
+        List<?> list = new Orm().dumpResultSet( FakeResultSet.create( columns, rows ), clazz );
+
+        assertEquals( 1, list.size() );
+        assertEquals( Integer.valueOf( 0 ), PropertyUtils.getSimpleProperty( list.get( 0 ), "id" ) );
+        assertEquals( "alice", PropertyUtils.getSimpleProperty( list.get( 0 ), "customerName" ) );
+        assertEquals( Long.valueOf( 99 ), PropertyUtils.getSimpleProperty( list.get( 0 ), "amount" ) );
+        assertEquals( "n", PropertyUtils.getSimpleProperty( list.get( 0 ), "note" ) );
+        assertNull( PropertyUtils.getSimpleProperty( list.get( 0 ), "rank" ) );
+    }
+
+    public void testMismatchedColumnType()
+        throws Exception
+    {
+        ClassLoader loader = compile( "PriceInfo", PRICE_SOURCE );
+        if ( loader == null )
+        {
+            return;
+        }
+
+        Class<?> clazz = loader.loadClass( "sample.PriceInfo" );
+        assertNotNull( loader.loadClass( "sample.PriceInfo_Mapper" ) );
+
+        // VARCHAR of numeric fields, DOUBLE of a BigDecimal field
+        String[] columns = { "AMOUNT", "RANK", "PRICE" };
+        Object[][] rows = { { "99", "7", Double.valueOf( 1.5 ) } };
+        List<?> list = new Orm().dumpResultSet( FakeResultSet.create( columns, rows ), clazz );
+
+        assertEquals( 1, list.size() );
+        assertEquals( Long.valueOf( 99 ), PropertyUtils.getSimpleProperty( list.get( 0 ), "amount" ) );
+        assertEquals( Integer.valueOf( 7 ), PropertyUtils.getSimpleProperty( list.get( 0 ), "rank" ) );
+        assertEquals( new BigDecimal( "1.5" ), PropertyUtils.getSimpleProperty( list.get( 0 ), "price" ) );
+    }
+}
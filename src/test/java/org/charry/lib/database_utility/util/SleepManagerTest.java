@@ -0,0 +1,65 @@
+package org.charry.lib.database_utility.util;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the per-alias backoff of SleepManager.
+ */
+public class SleepManagerTest 
+    extends TestCase
+{
+    public SleepManagerTest( String testName )
+    {
+        super( testName );
+    }
+
+    public static Test suite()
+    {
+        return new TestSuite( SleepManagerTest.class );
+    }
+
+    protected void tearDown()
+    {
+        SleepManager.setSleepInterval( 0 );
+    }
+
+    public void testAliasesBackOffIndependently()
+    {
+        SleepManager flapping = SleepManager.getInstance( "test-flapping" );
+        for ( int i = 0; i < 20; i++ )
+        {
+            int interval = flapping.getNextSleepInterval();
+            assertTrue( interval >= 5 && interval <= 3600 );
+        }
+        assertTrue( flapping.getNextSleepInterval() >= 1800 );
+
+        int healthy = SleepManager.getInstance( "test-healthy" ).getNextSleepInterval();
+        assertTrue( healthy >= 5 && healthy <= 10 );
+
+        flapping.resetSleepTick();
+        int interval = flapping.getNextSleepInterval();
+        assertTrue( interval >= 5 && interval <= 10 );
+    }
+
+    public void testMaxSleepInterval()
+    {
+        SleepManager sleepManager = SleepManager.getInstance( "test-capped" );
+        sleepManager.setMaxSleepInterval( 60 );
+        for ( int i = 0; i < 20; i++ )
+        {
+            assertTrue( sleepManager.getNextSleepInterval() <= 60 );
+        }
+        assertTrue( sleepManager.getNextSleepInterval() >= 30 );
+    }
+
+    public void testFixedSleepInterval()
+    {
+        SleepManager.setSleepInterval( 30 );
+        assertEquals( 30, SleepManager.getInstance( "test-fixed" ).getNextSleepInterval() );
+
+        SleepManager.setSleepInterval( 1 );
+        assertEquals( 5, SleepManager.getInstance( "test-fixed" ).getNextSleepInterval() );
+    }
+}